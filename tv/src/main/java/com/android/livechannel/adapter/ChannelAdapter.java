@@ -1,36 +1,124 @@
 package com.android.livechannel.adapter;
 
 import android.content.Context;
+import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
-import android.view.LayoutInflater;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
 import com.android.livechannel.R;
 import com.android.livechannel.bean.TifChannelEntity;
+import com.android.livechannel.bean.TifProgramEntity;
+import com.android.livechannel.util.LogoLedger;
+import com.android.livechannel.util.NowNextScheduler;
 import com.android.livechannel.util.Util;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.StringSignature;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class ChannelAdapter extends RecyclerView.Adapter<ChannelAdapter.MyViewHolder> {
+public class ChannelAdapter extends RecyclerView.Adapter<DetailViewHolder> {
+    /** Rebinds only the current program of a row. */
+    private static final Object PAYLOAD_PROGRAM = new Object();
+    /** Rebinds only the logo of a row. */
+    private static final Object PAYLOAD_LOGO = new Object();
+
     private Context mContext;
-    private List<TifChannelEntity> mTifChannelEntityList;
+    private RowInflater mRowInflater;
+    private final AsyncListDiffer<TifChannelEntity> mDiffer =
+            new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    /** The list last handed to {@link #mDiffer}, which only exposes an unmodifiable wrapper. */
+    private List<TifChannelEntity> mSubmittedList;
     private ChannelClickListener mChannelClickListener;
+    private final int mLogoSize;
+    private final LogoLedger mLogoLedger;
+    private NowNextScheduler mNowNextScheduler;
+    private final DetailViewHolder.OnItemClickListener mOnItemClickListener =
+            new DetailViewHolder.OnItemClickListener() {
+                @Override
+                public void onItemClicked(int position) {
+                    if(mChannelClickListener!=null){
+                        mChannelClickListener.notifyChannelClicked(
+                                mDiffer.getCurrentList().get(position));
+                    }
+                }
+            };
+    private final LogoLedger.Listener mLogoListener = new LogoLedger.Listener() {
+        @Override
+        public void onLogoChanged(Uri logoUri) {
+            // Rewritten in place, so the channel itself may not have changed at all.
+            List<TifChannelEntity> channels = mDiffer.getCurrentList();
+            for (int i = 0; i < channels.size(); ++i) {
+                if (logoUri.equals(channels.get(i).getLogoUri())) {
+                    notifyItemChanged(i, PAYLOAD_LOGO);
+                }
+            }
+        }
+    };
 
 
 
     public ChannelAdapter(Context context) {
         mContext = context;
+        mRowInflater = new RowInflater(context);
+        mLogoSize = context.getResources().getDimensionPixelSize(R.dimen.channel_logo_size);
+        mLogoLedger = LogoLedger.getInstance(context);
+        setHasStableIds(true);
     }
+    /**
+     * Replaces the channels shown. The difference to the current list is computed on a background
+     * thread and only the rows that changed are updated, so {@code tifChannelEntities} must not be
+     * modified afterwards.
+     */
     public void updateData(List<TifChannelEntity> tifChannelEntities){
-        mTifChannelEntityList = tifChannelEntities;
-        if(mTifChannelEntityList == null){
-            mTifChannelEntityList = new ArrayList<>();
+        if(tifChannelEntities == null){
+            tifChannelEntities = new ArrayList<>();
         }
-        Util.LOG("InputListAdapter updateData channel size:"+mTifChannelEntityList.size());
+        Util.LOG("InputListAdapter updateData channel size:"+tifChannelEntities.size());
+        mSubmittedList = tifChannelEntities;
+        mDiffer.submitList(tifChannelEntities);
+    }
+
+    /**
+     * Shows an unrelated list of channels, such as those of another input. Diffing two lists
+     * that share nothing is the worst case for {@link DiffUtil}, so the rows are swapped at once
+     * instead.
+     */
+    public void replaceData(List<TifChannelEntity> tifChannelEntities){
+        if(tifChannelEntities == mSubmittedList){
+            return;
+        }
+        mSubmittedList = tifChannelEntities;
+        // Going through an empty list makes both submissions synchronous and diff-free.
+        mDiffer.submitList(null);
+        mDiffer.submitList(tifChannelEntities);
+    }
+
+    /**
+     * Shares {@code rowInflater}, and the rows it inflated ahead of time, with this adapter.
+     */
+    public void setRowInflater(RowInflater rowInflater){
+        mRowInflater = rowInflater;
+    }
+
+    /**
+     * Shows the program currently on each channel, as tracked by {@code nowNextScheduler}.
+     */
+    public void setNowNextScheduler(NowNextScheduler nowNextScheduler){
+        mNowNextScheduler = nowNextScheduler;
+    }
+
+    /**
+     * Refreshes the current program of the row at {@code position}, and nothing else of it.
+     */
+    public void notifyProgramChanged(int position){
+        notifyItemChanged(position, PAYLOAD_PROGRAM);
     }
 
     public void registerChannelClickListener(ChannelClickListener channelClickListener){
@@ -39,58 +127,134 @@ public class ChannelAdapter extends RecyclerView.Adapter<ChannelAdapter.MyViewHo
 
 
     @Override
-    public int getItemViewType(int position) {
-        return super.getItemViewType(position);
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mLogoLedger.addListener(mLogoListener);
     }
 
     @Override
-    public void setHasStableIds(boolean hasStableIds) {
-        super.setHasStableIds(true);
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        mLogoLedger.removeListener(mLogoListener);
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return RowInflater.VIEW_TYPE;
     }
 
     @Override
     public long getItemId(int position) {
-        return super.getItemId(position);
+        return mDiffer.getCurrentList().get(position).getId();
     }
 
     @NonNull
     @Override
-    public MyViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i) {
-        View view = LayoutInflater.from(mContext).inflate(R.layout.input_detail_item,viewGroup,false);
+    public DetailViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i) {
+        View view = mRowInflater.inflate(viewGroup);
+
+        return new DetailViewHolder(view);
+    }
 
-        return new MyViewHolder(view);
+    @Override
+    public void onBindViewHolder(@NonNull DetailViewHolder holder, int position,
+            @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        TifChannelEntity tifChannelEntity = mDiffer.getCurrentList().get(position);
+        if (payloads.contains(PAYLOAD_LOGO)) {
+            bindLogo(holder, tifChannelEntity);
+        }
+        if (payloads.contains(PAYLOAD_PROGRAM)) {
+            bindProgram(holder, tifChannelEntity);
+        }
     }
 
     @Override
-    public void onBindViewHolder(@NonNull MyViewHolder myViewHolder, final int position) {
+    public void onBindViewHolder(@NonNull DetailViewHolder myViewHolder, int position) {
 
 
-        myViewHolder.mTextView.setText(mTifChannelEntityList.get(position).getDisplayName());
-        myViewHolder.itemView.setTag(position);
-        myViewHolder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if(mChannelClickListener!=null){
-                    mChannelClickListener.notifyChannelClicked(mTifChannelEntityList.get(position));
-                }
-            }
-        });
+        TifChannelEntity tifChannelEntity = mDiffer.getCurrentList().get(position);
+        myViewHolder.setOnItemClickListener(mOnItemClickListener);
+        // The row may come from the input list through the shared pool, with that list's focus
+        // listener still set.
+        myViewHolder.setOnItemFocusListener(null);
+        myViewHolder.mTextView.setText(tifChannelEntity.getDisplayName());
+        myViewHolder.mLogoView.setVisibility(View.VISIBLE);
+        bindLogo(myViewHolder, tifChannelEntity);
+        bindProgram(myViewHolder, tifChannelEntity);
+    }
+
+    private void bindLogo(DetailViewHolder holder, TifChannelEntity tifChannelEntity) {
+        String hash = mLogoLedger.getHash(tifChannelEntity.getLogoUri());
+        // Rebinding the same logo keeps the request already made.
+        if (holder.mLogoChannelId == tifChannelEntity.getId()
+                && TextUtils.equals(holder.mLogoHash, hash)) {
+            return;
+        }
+        // Decoded at the row's size, so the memory and disk caches hold row-sized bitmaps
+        // only. The signature changes when the logo is rewritten in place, so the old bitmap
+        // isn't reused.
+        holder.mLogoChannelId = tifChannelEntity.getId();
+        holder.mLogoHash = hash;
+        Glide.with(mContext)
+                .load(tifChannelEntity.getLogoUri())
+                .signature(new StringSignature(hash))
+                .override(mLogoSize, mLogoSize)
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
+                .dontAnimate()
+                .into(holder.mLogoView);
+    }
+
+    private void bindProgram(DetailViewHolder holder, TifChannelEntity tifChannelEntity) {
+        TifProgramEntity program = mNowNextScheduler != null
+                ? mNowNextScheduler.getCurrentProgram(tifChannelEntity.getId()) : null;
+        if (program != null) {
+            holder.mProgramView.setText(program.getTitle());
+            holder.mProgramView.setVisibility(View.VISIBLE);
+        } else {
+            holder.mProgramView.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull DetailViewHolder holder) {
+        super.onViewRecycled(holder);
+        // The row scrolled off screen, don't keep loading a logo nobody will see.
+        Glide.clear(holder.mLogoView);
+        holder.mLogoChannelId = RecyclerView.NO_ID;
+        holder.mLogoHash = null;
     }
 
     @Override
     public int getItemCount() {
 
-        return mTifChannelEntityList.size();
+        return mDiffer.getCurrentList().size();
     }
 
-    public static class MyViewHolder extends RecyclerView.ViewHolder {
-        public TextView mTextView;
-        public MyViewHolder(@NonNull View itemView) {
-            super(itemView);
-            mTextView = itemView.findViewById(R.id.detail);
-        }
-    }
+    private static final DiffUtil.ItemCallback<TifChannelEntity> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<TifChannelEntity>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull TifChannelEntity oldItem,
+                        @NonNull TifChannelEntity newItem) {
+                    return oldItem.getId() == newItem.getId();
+                }
 
+                @Override
+                public boolean areContentsTheSame(@NonNull TifChannelEntity oldItem,
+                        @NonNull TifChannelEntity newItem) {
+                    // Only what a row shows, or what decides whether it can be played.
+                    return TextUtils.equals(oldItem.getDisplayName(), newItem.getDisplayName())
+                            && TextUtils.equals(oldItem.getDisplayNumber(),
+                                    newItem.getDisplayNumber())
+                            && TextUtils.equals(oldItem.getInputId(), newItem.getInputId())
+                            && oldItem.getLocked() == newItem.getLocked()
+                            && oldItem.getBrowsable() == newItem.getBrowsable()
+                            && oldItem.getVersionNumber() == newItem.getVersionNumber();
+                }
+            };
 
     public static interface ChannelClickListener{
         void notifyChannelClicked(TifChannelEntity tifChannelEntity);
@@ -0,0 +1,67 @@
+package com.android.livechannel.adapter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.android.livechannel.R;
+
+/**
+ * Holder of an {@code input_detail_item} row. Its click and focus listeners are created once with
+ * the holder and resolve the position when the event happens, so binding allocates nothing.
+ */
+public class DetailViewHolder extends RecyclerView.ViewHolder
+        implements View.OnClickListener, View.OnFocusChangeListener {
+    public TextView mTextView;
+    public ImageView mLogoView;
+    public TextView mProgramView;
+    /** The channel whose logo {@link #mLogoView} shows, or {@link RecyclerView#NO_ID}. */
+    long mLogoChannelId = RecyclerView.NO_ID;
+    /** The {@link com.android.livechannel.util.LogoLedger} hash of that logo. */
+    String mLogoHash;
+    private OnItemClickListener mOnItemClickListener;
+    private OnItemFocusListener mOnItemFocusListener;
+
+    public DetailViewHolder(@NonNull View itemView) {
+        super(itemView);
+        mTextView = itemView.findViewById(R.id.detail);
+        mLogoView = itemView.findViewById(R.id.logo);
+        mProgramView = itemView.findViewById(R.id.program);
+        itemView.setOnClickListener(this);
+        itemView.setOnFocusChangeListener(this);
+    }
+
+    void setOnItemClickListener(OnItemClickListener onItemClickListener) {
+        mOnItemClickListener = onItemClickListener;
+    }
+
+    void setOnItemFocusListener(OnItemFocusListener onItemFocusListener) {
+        mOnItemFocusListener = onItemFocusListener;
+    }
+
+    @Override
+    public void onClick(View v) {
+        int position = getAdapterPosition();
+        if (position != RecyclerView.NO_POSITION && mOnItemClickListener != null) {
+            mOnItemClickListener.onItemClicked(position);
+        }
+    }
+
+    @Override
+    public void onFocusChange(View v, boolean hasFocus) {
+        int position = getAdapterPosition();
+        if (hasFocus && position != RecyclerView.NO_POSITION && mOnItemFocusListener != null) {
+            mOnItemFocusListener.onItemFocused(position);
+        }
+    }
+
+    interface OnItemClickListener {
+        void onItemClicked(int position);
+    }
+
+    interface OnItemFocusListener {
+        void onItemFocused(int position);
+    }
+}
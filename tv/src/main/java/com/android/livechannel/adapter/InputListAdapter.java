@@ -3,98 +3,158 @@ package com.android.livechannel.adapter;
 import android.content.Context;
 import android.media.tv.TvInputInfo;
 import android.support.annotation.NonNull;
+import android.support.v7.recyclerview.extensions.AsyncListDiffer;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
-import android.view.LayoutInflater;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.TextView;
 
-import com.android.livechannel.R;
+import com.android.livechannel.bean.TvInputEntity;
 import com.android.livechannel.util.Util;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class InputListAdapter extends RecyclerView.Adapter<InputListAdapter.MyViewHolder> {
+public class InputListAdapter extends RecyclerView.Adapter<DetailViewHolder> {
     private Context mContext;
-    private List<TvInputInfo> mTvInputInfoList;
+    private RowInflater mRowInflater;
+    private final AsyncListDiffer<TvInputEntity> mDiffer =
+            new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private InputClickListener mInputClickListener;
+    private final DetailViewHolder.OnItemClickListener mOnItemClickListener =
+            new DetailViewHolder.OnItemClickListener() {
+                @Override
+                public void onItemClicked(int position) {
+                    if(mInputClickListener!=null){
+                        mInputClickListener.notifyInputClicked(
+                                mDiffer.getCurrentList().get(position).getTvInputInfo());
+                    }
+                }
+            };
+    private InputFocusListener mInputFocusListener;
+    private final DetailViewHolder.OnItemFocusListener mOnItemFocusListener =
+            new DetailViewHolder.OnItemFocusListener() {
+                @Override
+                public void onItemFocused(int position) {
+                    if(mInputFocusListener!=null){
+                        mInputFocusListener.notifyInputFocused(
+                                mDiffer.getCurrentList().get(position).getId());
+                    }
+                }
+            };
 
 
 
     public InputListAdapter(Context context) {
         mContext = context;
+        mRowInflater = new RowInflater(context);
+        setHasStableIds(true);
     }
-    public void updateData(List<TvInputInfo> tvInputInfos){
-        mTvInputInfoList = tvInputInfos;
-        if(mTvInputInfoList == null){
-            mTvInputInfoList = new ArrayList<>();
+    /**
+     * Replaces the inputs shown. The difference to the current list is computed on a background
+     * thread and only the rows that changed are updated, so {@code tvInputEntities} must not be
+     * modified afterwards.
+     */
+    public void updateData(List<TvInputEntity> tvInputEntities){
+        if(tvInputEntities == null){
+            tvInputEntities = new ArrayList<>();
         }
-        Util.LOG("InputListAdapter updateData size:"+mTvInputInfoList.size());
+        Util.LOG("InputListAdapter updateData size:"+tvInputEntities.size());
+        mDiffer.submitList(tvInputEntities);
+    }
+
+    /**
+     * Shares {@code rowInflater}, and the rows it inflated ahead of time, with this adapter.
+     */
+    public void setRowInflater(RowInflater rowInflater){
+        mRowInflater = rowInflater;
     }
 
     public void registerInputClickListener(InputClickListener inputClickListener){
         mInputClickListener = inputClickListener;
     }
 
+    public void registerInputFocusListener(InputFocusListener inputFocusListener){
+        mInputFocusListener = inputFocusListener;
+    }
+
 
     @Override
     public int getItemViewType(int position) {
-        return super.getItemViewType(position);
+        return RowInflater.VIEW_TYPE;
     }
 
     @Override
-    public void setHasStableIds(boolean hasStableIds) {
-        super.setHasStableIds(true);
+    public long getItemId(int position) {
+        return hashId(mDiffer.getCurrentList().get(position).getId());
     }
 
-    @Override
-    public long getItemId(int position) {
-        return super.getItemId(position);
+    /**
+     * 64-bit FNV-1a hash of an input ID, wide enough that distinct inputs don't collide the way
+     * {@link String#hashCode} could.
+     */
+    private static long hashId(String inputId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < inputId.length(); ++i) {
+            hash ^= inputId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // RecyclerView.NO_ID is reserved.
+        return hash == RecyclerView.NO_ID ? 0 : hash;
     }
 
     @NonNull
     @Override
-    public MyViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i) {
-        View view = LayoutInflater.from(mContext).inflate(R.layout.input_detail_item,viewGroup,false);
+    public DetailViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i) {
+        View view = mRowInflater.inflate(viewGroup);
 
-        return new MyViewHolder(view);
+        return new DetailViewHolder(view);
     }
 
     @Override
-    public void onBindViewHolder(@NonNull MyViewHolder myViewHolder, final int position) {
-
-
-        myViewHolder.mTextView.setText(mTvInputInfoList.get(position).loadLabel(mContext));
-        myViewHolder.itemView.setTag(position);
-        myViewHolder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if(mInputClickListener!=null){
-                    mInputClickListener.notifyInputClicked(mTvInputInfoList.get(position));
-                }
-            }
-        });
+    public void onBindViewHolder(@NonNull DetailViewHolder myViewHolder, int position) {
+
+
+        TvInputEntity tvInputEntity = mDiffer.getCurrentList().get(position);
+        myViewHolder.setOnItemClickListener(mOnItemClickListener);
+        myViewHolder.setOnItemFocusListener(mOnItemFocusListener);
+        myViewHolder.mTextView.setText(tvInputEntity.getLabel());
+        myViewHolder.mLogoView.setImageDrawable(tvInputEntity.getIcon());
+        myViewHolder.mLogoView.setVisibility(
+                tvInputEntity.getIcon() != null ? View.VISIBLE : View.GONE);
+        // The row may come from the channel list through the shared pool.
+        myViewHolder.mProgramView.setVisibility(View.GONE);
     }
 
     @Override
     public int getItemCount() {
 
-        return mTvInputInfoList.size();
+        return mDiffer.getCurrentList().size();
     }
 
-    public static class MyViewHolder extends RecyclerView.ViewHolder {
-        public TextView mTextView;
-        public MyViewHolder(@NonNull View itemView) {
-            super(itemView);
-            mTextView = itemView.findViewById(R.id.detail);
-        }
-    }
+    private static final DiffUtil.ItemCallback<TvInputEntity> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<TvInputEntity>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull TvInputEntity oldItem,
+                        @NonNull TvInputEntity newItem) {
+                    return TextUtils.equals(oldItem.getId(), newItem.getId());
+                }
 
+                @Override
+                public boolean areContentsTheSame(@NonNull TvInputEntity oldItem,
+                        @NonNull TvInputEntity newItem) {
+                    return oldItem.contentEquals(newItem);
+                }
+            };
 
     public static interface InputClickListener{
         void notifyInputClicked(TvInputInfo tvInputInfo);
     }
 
+    public static interface InputFocusListener{
+        void notifyInputFocused(String inputId);
+    }
+
 
 }
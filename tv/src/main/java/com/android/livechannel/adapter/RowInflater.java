@@ -0,0 +1,64 @@
+package com.android.livechannel.adapter;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.android.livechannel.R;
+
+import java.util.ArrayDeque;
+
+/**
+ * Creates {@code input_detail_item} rows for the channel and input lists. Rows can be inflated
+ * ahead of time off the main thread, so the first layout of a list only has to bind them.
+ * Must be used on the main thread.
+ */
+public class RowInflater {
+    /** View type of {@code input_detail_item} rows, shared by every list using them. */
+    public static final int VIEW_TYPE = R.layout.input_detail_item;
+
+    private final LayoutInflater mInflater;
+    private final ArrayDeque<View> mPreInflatedViews = new ArrayDeque<>();
+
+    public RowInflater(Context context) {
+        mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Returns a row inflated ahead of time, or inflates one if there is none left.
+     */
+    public View inflate(ViewGroup parent) {
+        View view = mPreInflatedViews.poll();
+        if (view == null) {
+            view = mInflater.inflate(R.layout.input_detail_item, parent, false);
+        }
+        return view;
+    }
+
+    /**
+     * Inflates {@code count} rows off the main thread and puts holders for them into
+     * {@code pool}, created by {@code adapter}.
+     */
+    public void preInflate(final RecyclerView parent, int count,
+            final RecyclerView.Adapter<?> adapter, final RecyclerView.RecycledViewPool pool) {
+        AsyncLayoutInflater asyncLayoutInflater = new AsyncLayoutInflater(parent.getContext());
+        for (int i = 0; i < count; ++i) {
+            asyncLayoutInflater.inflate(R.layout.input_detail_item, parent,
+                    new AsyncLayoutInflater.OnInflateFinishedListener() {
+                        @Override
+                        public void onInflateFinished(@NonNull View view, int resid,
+                                @Nullable ViewGroup viewGroup) {
+                            // The adapter picks the view up again in onCreateViewHolder, which
+                            // also gives the holder its view type.
+                            mPreInflatedViews.add(view);
+                            pool.putRecycledView(adapter.createViewHolder(parent, VIEW_TYPE));
+                        }
+                    });
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.android.livechannel.bean;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.media.tv.TvContract;
+import android.net.Uri;
 import android.text.TextUtils;
 
 
@@ -83,6 +84,8 @@ public final class TifChannelEntity {
     private int mTransient;
 
     private String mChannelLogo;
+    private Uri mLogoUri;
+    private Uri mChannelUri;
 
 
     public TifChannelEntity() {
@@ -99,6 +102,8 @@ public final class TifChannelEntity {
 
     public void setId(long mId) {
         this.mId = mId;
+        mLogoUri = null;
+        mChannelUri = null;
     }
 
     public void setPackageName(String mPackageName) {
@@ -299,6 +304,26 @@ public final class TifChannelEntity {
         return mChannelLogo;
     }
 
+    /**
+     * @return The {@link TvContract#buildChannelLogoUri} of the channel, built on first use.
+     */
+    public Uri getLogoUri() {
+        if (mLogoUri == null) {
+            mLogoUri = TvContract.buildChannelLogoUri(mId);
+        }
+        return mLogoUri;
+    }
+
+    /**
+     * @return The {@link TvContract#buildChannelUri} of the channel, built on first use.
+     */
+    public Uri getChannelUri() {
+        if (mChannelUri == null) {
+            mChannelUri = TvContract.buildChannelUri(mId);
+        }
+        return mChannelUri;
+    }
+
     /**
      * @return The value of {@link TvContract.Channels#COLUMN_NETWORK_AFFILIATION} for the channel.
      */
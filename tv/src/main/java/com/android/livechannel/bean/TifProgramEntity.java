@@ -0,0 +1,133 @@
+package com.android.livechannel.bean;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.media.tv.TvContract;
+import android.text.TextUtils;
+
+/**
+ * A program of {@link TvContract.Programs}, limited to what a guide shows of it.
+ */
+public final class TifProgramEntity {
+    /**
+     * The columns read by {@link #fromCursor}, kept narrow since guides load programs by the
+     * thousand.
+     */
+    public static final String[] PROJECTION = new String[] {
+            TvContract.Programs._ID,
+            TvContract.Programs.COLUMN_CHANNEL_ID,
+            TvContract.Programs.COLUMN_TITLE,
+            TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS,
+            TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS,
+            TvContract.Programs.COLUMN_CONTENT_RATING
+    };
+
+    private static final long INVALID_PROGRAM_ID = -1;
+
+    private long mId = INVALID_PROGRAM_ID;
+    private long mChannelId;
+    private String mTitle;
+    private long mStartTimeUtcMillis;
+    private long mEndTimeUtcMillis;
+    private String mContentRating;
+
+    public long getId() {
+        return mId;
+    }
+
+    public void setId(long id) {
+        mId = id;
+    }
+
+    public long getChannelId() {
+        return mChannelId;
+    }
+
+    public void setChannelId(long channelId) {
+        mChannelId = channelId;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public void setTitle(String title) {
+        mTitle = title;
+    }
+
+    public long getStartTimeUtcMillis() {
+        return mStartTimeUtcMillis;
+    }
+
+    public void setStartTimeUtcMillis(long startTimeUtcMillis) {
+        mStartTimeUtcMillis = startTimeUtcMillis;
+    }
+
+    public long getEndTimeUtcMillis() {
+        return mEndTimeUtcMillis;
+    }
+
+    public void setEndTimeUtcMillis(long endTimeUtcMillis) {
+        mEndTimeUtcMillis = endTimeUtcMillis;
+    }
+
+    /**
+     * @return The value of {@link TvContract.Programs#COLUMN_CONTENT_RATING}, see
+     * {@link com.android.livechannel.util.ContentRatingCodec}.
+     */
+    public String getContentRating() {
+        return mContentRating;
+    }
+
+    public void setContentRating(String contentRating) {
+        mContentRating = contentRating;
+    }
+
+    /**
+     * @return The values of the program for inserting it into the TV provider.
+     */
+    public ContentValues toContentValues() {
+        return toContentValues(mChannelId, mStartTimeUtcMillis, mEndTimeUtcMillis);
+    }
+
+    /**
+     * Same as {@link #toContentValues()}, with the channel ID and times already boxed, so a
+     * caller writing many programs can share the boxes between them.
+     */
+    public ContentValues toContentValues(Long channelId, Long startTimeUtcMillis,
+            Long endTimeUtcMillis) {
+        ContentValues values = new ContentValues(PROJECTION.length);
+        if (mId != INVALID_PROGRAM_ID) {
+            values.put(TvContract.Programs._ID, mId);
+        }
+        values.put(TvContract.Programs.COLUMN_CHANNEL_ID, channelId);
+        if (!TextUtils.isEmpty(mTitle)) {
+            values.put(TvContract.Programs.COLUMN_TITLE, mTitle);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_TITLE);
+        }
+        values.put(TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS, startTimeUtcMillis);
+        values.put(TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS, endTimeUtcMillis);
+        if (!TextUtils.isEmpty(mContentRating)) {
+            values.put(TvContract.Programs.COLUMN_CONTENT_RATING, mContentRating);
+        } else {
+            values.putNull(TvContract.Programs.COLUMN_CONTENT_RATING);
+        }
+        return values;
+    }
+
+    /**
+     * Reads a program from a cursor over {@link #PROJECTION}.
+     */
+    public static TifProgramEntity fromCursor(Cursor cursor) {
+        TifProgramEntity tifProgramEntity = new TifProgramEntity();
+        int index = 0;
+        tifProgramEntity.setId(cursor.getLong(index++));
+        tifProgramEntity.setChannelId(cursor.getLong(index++));
+        tifProgramEntity.setTitle(cursor.getString(index++));
+        tifProgramEntity.setStartTimeUtcMillis(cursor.getLong(index++));
+        tifProgramEntity.setEndTimeUtcMillis(cursor.getLong(index++));
+        tifProgramEntity.setContentRating(cursor.getString(index++));
+        return tifProgramEntity;
+    }
+}
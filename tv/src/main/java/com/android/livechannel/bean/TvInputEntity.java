@@ -0,0 +1,56 @@
+package com.android.livechannel.bean;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.media.tv.TvInputInfo;
+import android.text.TextUtils;
+
+/**
+ * What the input list shows for a {@link TvInputInfo}. Label and icon are resolved through the
+ * {@link android.content.pm.PackageManager} once, off the main thread, instead of on every bind.
+ */
+public final class TvInputEntity {
+    private final TvInputInfo mTvInputInfo;
+    private final CharSequence mLabel;
+    private final Drawable mIcon;
+
+    private TvInputEntity(TvInputInfo tvInputInfo, CharSequence label, Drawable icon) {
+        mTvInputInfo = tvInputInfo;
+        mLabel = label;
+        mIcon = icon;
+    }
+
+    /**
+     * Resolves the label and icon of {@code tvInputInfo}. Must not be called on the main thread.
+     */
+    public static TvInputEntity fromTvInputInfo(Context context, TvInputInfo tvInputInfo) {
+        return new TvInputEntity(tvInputInfo, tvInputInfo.loadLabel(context),
+                tvInputInfo.loadIcon(context));
+    }
+
+    public TvInputInfo getTvInputInfo() {
+        return mTvInputInfo;
+    }
+
+    /**
+     * @return The value of {@link TvInputInfo#getId} for the input.
+     */
+    public String getId() {
+        return mTvInputInfo.getId();
+    }
+
+    public CharSequence getLabel() {
+        return mLabel;
+    }
+
+    public Drawable getIcon() {
+        return mIcon;
+    }
+
+    /**
+     * @return Whether both entities would be displayed the same way.
+     */
+    public boolean contentEquals(TvInputEntity other) {
+        return mTvInputInfo.equals(other.mTvInputInfo) && TextUtils.equals(mLabel, other.mLabel);
+    }
+}
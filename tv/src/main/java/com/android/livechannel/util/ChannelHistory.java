@@ -0,0 +1,115 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+import android.util.LongSparseArray;
+
+import com.android.livechannel.R;
+import com.android.livechannel.bean.TifChannelEntity;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.signature.StringSignature;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most recently watched channels, most recent last.
+ *
+ * <p>Recording a channel and finding the one to flip back to take constant time. The channels
+ * most likely to be recalled are kept warm: their URIs are resolved and their logos preloaded at
+ * the size the channel list shows them, so recalling one touches neither the provider nor the
+ * disk. Must be used on the main thread.
+ */
+public class ChannelHistory {
+    private static final int MAX_SIZE = 16;
+    /** How many of the most recent channels get their logos preloaded. */
+    private static final int WARM_SIZE = 4;
+
+    private final Context mContext;
+    private final int mLogoSize;
+    private final LogoLedger mLogoLedger;
+    private final LinkedHashMap<Long, TifChannelEntity> mChannels =
+            new LinkedHashMap<Long, TifChannelEntity>(MAX_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, TifChannelEntity> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+    private TifChannelEntity mCurrent;
+    private TifChannelEntity mPrevious;
+
+    public ChannelHistory(Context context) {
+        mContext = context.getApplicationContext();
+        mLogoSize = context.getResources().getDimensionPixelSize(R.dimen.channel_logo_size);
+        mLogoLedger = LogoLedger.getInstance(context);
+    }
+
+    /**
+     * Records {@code channel} as the one being watched.
+     */
+    public void record(TifChannelEntity channel) {
+        mChannels.put(channel.getId(), channel);
+        if (mCurrent != null && mCurrent.getId() == channel.getId()) {
+            mCurrent = channel;
+            return;
+        }
+        mPrevious = mCurrent;
+        mCurrent = channel;
+        if (mPrevious != null) {
+            // The next flip goes there.
+            warm(mPrevious);
+        }
+    }
+
+    /**
+     * @return The channel watched before the current one, or {@code null}.
+     */
+    public TifChannelEntity getPrevious() {
+        return mPrevious;
+    }
+
+    /**
+     * Replaces the remembered channels by their reloaded versions, and forgets those that are
+     * gone. The most recent ones are warmed up again.
+     */
+    public void setLineup(List<TifChannelEntity> channels) {
+        LongSparseArray<TifChannelEntity> channelsById = new LongSparseArray<>(channels.size());
+        for (TifChannelEntity channel : channels) {
+            channelsById.put(channel.getId(), channel);
+        }
+        // Iterating doesn't count as an access, the order is kept.
+        Iterator<Map.Entry<Long, TifChannelEntity>> iterator = mChannels.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, TifChannelEntity> entry = iterator.next();
+            TifChannelEntity channel = channelsById.get(entry.getKey());
+            if (channel == null) {
+                iterator.remove();
+            } else {
+                entry.setValue(channel);
+            }
+        }
+        // Counted once the removed channels are gone, so the most recent ones are all warmed.
+        int skip = mChannels.size() - WARM_SIZE;
+        for (TifChannelEntity channel : mChannels.values()) {
+            if (--skip < 0) {
+                warm(channel);
+            }
+        }
+        mCurrent = mCurrent != null ? channelsById.get(mCurrent.getId()) : null;
+        mPrevious = mPrevious != null ? channelsById.get(mPrevious.getId()) : null;
+    }
+
+    private void warm(TifChannelEntity channel) {
+        channel.getChannelUri();
+        // Same request as ChannelAdapter makes into its fitCenter view, so the row finds the
+        // logo in the memory cache.
+        Glide.with(mContext)
+                .load(channel.getLogoUri())
+                .signature(new StringSignature(mLogoLedger.getHash(channel.getLogoUri())))
+                .fitCenter()
+                .diskCacheStrategy(DiskCacheStrategy.RESULT)
+                .preload(mLogoSize, mLogoSize);
+    }
+}
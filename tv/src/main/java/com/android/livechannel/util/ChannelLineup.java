@@ -0,0 +1,216 @@
+package com.android.livechannel.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.media.tv.TvContract;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The channels of all inputs, kept in sync with the TV provider while anybody listens.
+ *
+ * <p>Besides the whole lineup, sorted by display number, every input's channels are kept as a
+ * ready-made list, so showing the channels of another input costs neither a query nor a pass
+ * over the lineup. All lists handed out are immutable. Must be used on the main thread.
+ */
+public class ChannelLineup {
+    private static final long RELOAD_DELAY_MS = 300;
+
+    private static ChannelLineup sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final TaskScope mTaskScope = new TaskScope();
+    private final List<Listener> mListeners = new ArrayList<>();
+    private List<TifChannelEntity> mChannels = Collections.emptyList();
+    private Map<String, List<TifChannelEntity>> mChannelsByInput = Collections.emptyMap();
+    private boolean mLoaded;
+    private int mGeneration;
+
+    /** Told on the main thread whenever the lineup was (re)loaded. */
+    public interface Listener {
+        void onLineupChanged(ChannelLineup lineup);
+    }
+
+    public static synchronized ChannelLineup getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ChannelLineup(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ChannelLineup(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Starts delivering changes to {@code listener}. The first listener makes the lineup follow
+     * the provider; if it is loaded already, {@code listener} is told right away.
+     */
+    public void addListener(final Listener listener) {
+        mListeners.add(listener);
+        if (mListeners.size() == 1) {
+            mContentResolver.registerContentObserver(TvContract.Channels.CONTENT_URI, true,
+                    mChannelObserver);
+            reload();
+        } else if (mLoaded) {
+            listener.onLineupChanged(this);
+        }
+    }
+
+    /**
+     * Stops delivering changes to {@code listener}. Once nobody listens, the lineup stops
+     * following the provider.
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+        if (mListeners.isEmpty()) {
+            mContentResolver.unregisterContentObserver(mChannelObserver);
+            mMainHandler.removeCallbacks(mReloadRunnable);
+        }
+    }
+
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * @return Every channel, sorted by display number.
+     */
+    public List<TifChannelEntity> getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return The channels of {@code inputId} in lineup order, or the whole lineup if
+     * {@code inputId} is {@code null}.
+     */
+    public List<TifChannelEntity> getChannels(String inputId) {
+        if (inputId == null) {
+            return mChannels;
+        }
+        List<TifChannelEntity> channels = mChannelsByInput.get(inputId);
+        return channels != null ? channels : Collections.<TifChannelEntity>emptyList();
+    }
+
+    /**
+     * Loads the lineup from the provider again.
+     */
+    public void reload() {
+        mMainHandler.removeCallbacks(mReloadRunnable);
+        final int generation = ++mGeneration;
+        mTaskScope.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                List<TifChannelEntity> channels =
+                        TifChannelUtils.getChannels(mContentResolver, signal);
+                Collections.sort(channels, DISPLAY_NUMBER_COMPARATOR);
+                final List<TifChannelEntity> lineup = Collections.unmodifiableList(channels);
+                final Map<String, List<TifChannelEntity>> channelsByInput = partition(channels);
+                mTaskScope.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A later reload already started, its result will be more recent.
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mChannels = lineup;
+                        mChannelsByInput = channelsByInput;
+                        mLoaded = true;
+                        for (Listener listener : new ArrayList<>(mListeners)) {
+                            listener.onLineupChanged(ChannelLineup.this);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static Map<String, List<TifChannelEntity>> partition(
+            List<TifChannelEntity> channels) {
+        Map<String, List<TifChannelEntity>> channelsByInput = new HashMap<>();
+        for (TifChannelEntity channel : channels) {
+            List<TifChannelEntity> inputChannels = channelsByInput.get(channel.getInputId());
+            if (inputChannels == null) {
+                inputChannels = new ArrayList<>();
+                channelsByInput.put(channel.getInputId(), inputChannels);
+            }
+            inputChannels.add(channel);
+        }
+        for (Map.Entry<String, List<TifChannelEntity>> entry : channelsByInput.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(channelsByInput);
+    }
+
+    private final Runnable mReloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+
+    private final ContentObserver mChannelObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // A sync touches many rows at once, reload once it settles.
+            mMainHandler.removeCallbacks(mReloadRunnable);
+            mMainHandler.postDelayed(mReloadRunnable, RELOAD_DELAY_MS);
+        }
+    };
+
+    /**
+     * Orders display numbers like "2", "10", "10-1" numerically, part by part.
+     */
+    private static final Comparator<TifChannelEntity> DISPLAY_NUMBER_COMPARATOR =
+            new Comparator<TifChannelEntity>() {
+                @Override
+                public int compare(TifChannelEntity lhs, TifChannelEntity rhs) {
+                    String left = lhs.getDisplayNumber();
+                    String right = rhs.getDisplayNumber();
+                    if (TextUtils.isEmpty(left) || TextUtils.isEmpty(right)) {
+                        // Channels without a number go last.
+                        return TextUtils.isEmpty(left) ? (TextUtils.isEmpty(right) ? 0 : 1) : -1;
+                    }
+                    int i = 0;
+                    int j = 0;
+                    while (i < left.length() && j < right.length()) {
+                        char l = left.charAt(i);
+                        char r = right.charAt(j);
+                        if (Character.isDigit(l) && Character.isDigit(r)) {
+                            long leftNumber = 0;
+                            while (i < left.length() && Character.isDigit(left.charAt(i))) {
+                                leftNumber = leftNumber * 10 + (left.charAt(i++) - '0');
+                            }
+                            long rightNumber = 0;
+                            while (j < right.length() && Character.isDigit(right.charAt(j))) {
+                                rightNumber = rightNumber * 10 + (right.charAt(j++) - '0');
+                            }
+                            if (leftNumber != rightNumber) {
+                                return leftNumber < rightNumber ? -1 : 1;
+                            }
+                        } else {
+                            if (l != r) {
+                                return l < r ? -1 : 1;
+                            }
+                            ++i;
+                            ++j;
+                        }
+                    }
+                    return (left.length() - i) - (right.length() - j);
+                }
+            };
+}
@@ -0,0 +1,78 @@
+package com.android.livechannel.util;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Matches the channels of a feed with the rows already in the TV provider, by original network,
+ * transport stream and service ID.
+ */
+final class ChannelSyncDiff {
+    /** The channel has no row yet and must be inserted. */
+    static final long NO_MATCH = -1;
+
+    private ChannelSyncDiff() {
+    }
+
+    /**
+     * Each existing row matches at most one channel. Among rows with the same IDs, they are
+     * matched in the order they are listed.
+     *
+     * @param existing The rows in the provider, with their {@code _ID} and the three IDs set.
+     * @param channels The channels of the feed.
+     * @return The {@code _ID} of the row matching each channel, or {@link #NO_MATCH}.
+     */
+    static long[] match(List<TifChannelEntity> existing, List<TifChannelEntity> channels) {
+        HashMap<Key, ArrayDeque<Long>> rowIds = new HashMap<>(existing.size() * 2);
+        for (TifChannelEntity row : existing) {
+            Key key = new Key(row);
+            ArrayDeque<Long> ids = rowIds.get(key);
+            if (ids == null) {
+                ids = new ArrayDeque<>(1);
+                rowIds.put(key, ids);
+            }
+            ids.add(row.getId());
+        }
+        long[] matches = new long[channels.size()];
+        Arrays.fill(matches, NO_MATCH);
+        for (int i = 0; i < matches.length; ++i) {
+            ArrayDeque<Long> ids = rowIds.get(new Key(channels.get(i)));
+            if (ids != null && !ids.isEmpty()) {
+                matches[i] = ids.poll();
+            }
+        }
+        return matches;
+    }
+
+    private static final class Key {
+        private final int mOriginalNetworkId;
+        private final int mTransportStreamId;
+        private final int mServiceId;
+
+        Key(TifChannelEntity channel) {
+            mOriginalNetworkId = channel.getOriginalNetworkId();
+            mTransportStreamId = channel.getTransportStreamId();
+            mServiceId = channel.getServiceId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mOriginalNetworkId == other.mOriginalNetworkId
+                    && mTransportStreamId == other.mTransportStreamId
+                    && mServiceId == other.mServiceId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * mOriginalNetworkId + mTransportStreamId) * 31 + mServiceId;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.android.livechannel.util;
+
+import android.media.tv.TvContentRating;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts content ratings between their database form and {@link TvContentRating}s without
+ * re-parsing the same strings over and over.
+ *
+ * <p>Every distinct rating seen gets a bit, so a set of ratings can also be carried around as a
+ * {@code long} and checked against the blocked ratings with a single AND. The first 63 ratings
+ * get a bit of their own; any further ones share the last bit, which errs on the side of blocking
+ * when one of them is blocked.
+ */
+public final class ContentRatingCodec {
+    private static final int CACHE_SIZE = 256;
+    private static final int OVERFLOW_BIT_INDEX = 63;
+    private static final char DELIMITER = ',';
+
+    private static final ContentRatingCodec sInstance = new ContentRatingCodec();
+
+    private final LruCache<String, TvContentRating[]> mDecoded = new LruCache<>(CACHE_SIZE);
+    private final LruCache<String, TvContentRating> mRatings = new LruCache<>(CACHE_SIZE);
+    private final LruCache<TvContentRating, String> mFlattened = new LruCache<>(CACHE_SIZE);
+    private final LruCache<String, Long> mMasks = new LruCache<>(CACHE_SIZE);
+    private final Map<TvContentRating, Integer> mBitIndices = new HashMap<>();
+    private RatingPolicy mRatingPolicy;
+    private volatile long mBlockedMask;
+
+    /** Tells whether content with a given rating is blocked. */
+    public interface RatingPolicy {
+        boolean isRatingBlocked(TvContentRating contentRating);
+    }
+
+    public static ContentRatingCodec getInstance() {
+        return sInstance;
+    }
+
+    private ContentRatingCodec() {
+    }
+
+    /**
+     * Parses a string of comma-separated ratings.
+     *
+     * @return The ratings, or {@code null} if {@code commaSeparatedRatings} is empty.
+     */
+    public TvContentRating[] decode(String commaSeparatedRatings) {
+        if (TextUtils.isEmpty(commaSeparatedRatings)) {
+            return null;
+        }
+        TvContentRating[] decoded = mDecoded.get(commaSeparatedRatings);
+        if (decoded == null) {
+            decoded = parse(commaSeparatedRatings);
+            mDecoded.put(commaSeparatedRatings, decoded);
+        }
+        // Callers own the returned array, the cached one must not be handed out.
+        return decoded.clone();
+    }
+
+    private TvContentRating[] parse(String commaSeparatedRatings) {
+        int count = 1;
+        for (int i = 0; i < commaSeparatedRatings.length(); ++i) {
+            if (commaSeparatedRatings.charAt(i) == DELIMITER) {
+                ++count;
+            }
+        }
+        TvContentRating[] contentRatings = new TvContentRating[count];
+        int size = 0;
+        int start = 0;
+        for (int i = 0; i < count; ++i) {
+            int end = commaSeparatedRatings.indexOf(DELIMITER, start);
+            if (end < 0) {
+                end = commaSeparatedRatings.length();
+            }
+            String flattened = trim(commaSeparatedRatings, start, end);
+            // Empty segments, as left by a trailing comma, aren't ratings.
+            if (!flattened.isEmpty()) {
+                contentRatings[size++] = intern(flattened);
+            }
+            start = end + 1;
+        }
+        return size == count ? contentRatings : Arrays.copyOf(contentRatings, size);
+    }
+
+    /**
+     * Flattens ratings into a comma-separated string.
+     *
+     * @return The string, or {@code null} if there are no ratings.
+     */
+    public String encode(TvContentRating[] contentRatings) {
+        if (contentRatings == null || contentRatings.length == 0) {
+            return null;
+        }
+        if (contentRatings.length == 1) {
+            return flatten(contentRatings[0]);
+        }
+        StringBuilder ratings = new StringBuilder(flatten(contentRatings[0]));
+        for (int i = 1; i < contentRatings.length; ++i) {
+            ratings.append(DELIMITER);
+            ratings.append(flatten(contentRatings[i]));
+        }
+        return ratings.toString();
+    }
+
+    /**
+     * @return The bitmask of a string of comma-separated ratings, {@code 0} if it is empty.
+     */
+    public long toMask(String commaSeparatedRatings) {
+        if (TextUtils.isEmpty(commaSeparatedRatings)) {
+            return 0;
+        }
+        Long mask = mMasks.get(commaSeparatedRatings);
+        if (mask == null) {
+            TvContentRating[] decoded = mDecoded.get(commaSeparatedRatings);
+            mask = toMask(decoded != null ? decoded : parse(commaSeparatedRatings));
+            mMasks.put(commaSeparatedRatings, mask);
+        }
+        return mask;
+    }
+
+    /**
+     * @return The bitmask of a set of ratings, {@code 0} if there are none.
+     */
+    public long toMask(TvContentRating[] contentRatings) {
+        if (contentRatings == null) {
+            return 0;
+        }
+        long mask = 0;
+        for (TvContentRating contentRating : contentRatings) {
+            mask |= 1L << bitIndex(contentRating);
+        }
+        return mask;
+    }
+
+    /**
+     * Sets what decides whether a rating is blocked, usually
+     * {@link android.media.tv.TvInputManager#isRatingBlocked}. Every rating seen so far is
+     * checked again, so this is also how a change of the blocked ratings is applied.
+     */
+    public synchronized void setRatingPolicy(RatingPolicy ratingPolicy) {
+        mRatingPolicy = ratingPolicy;
+        long blockedMask = 0;
+        for (Map.Entry<TvContentRating, Integer> entry : mBitIndices.entrySet()) {
+            if (isBlocked(entry.getKey())) {
+                blockedMask |= 1L << entry.getValue();
+            }
+        }
+        mBlockedMask = blockedMask;
+    }
+
+    /**
+     * @return The bitmask of every rating seen so far that is blocked.
+     */
+    public long getBlockedMask() {
+        return mBlockedMask;
+    }
+
+    /**
+     * @return Whether content rated with {@code mask} is blocked.
+     */
+    public boolean isBlocked(long mask) {
+        return (mask & mBlockedMask) != 0;
+    }
+
+    private TvContentRating intern(String flattened) {
+        TvContentRating contentRating = mRatings.get(flattened);
+        if (contentRating == null) {
+            contentRating = TvContentRating.unflattenFromString(flattened);
+            mRatings.put(flattened, contentRating);
+            mFlattened.put(contentRating, flattened);
+        }
+        return contentRating;
+    }
+
+    private String flatten(TvContentRating contentRating) {
+        String flattened = mFlattened.get(contentRating);
+        if (flattened == null) {
+            flattened = contentRating.flattenToString();
+            mFlattened.put(contentRating, flattened);
+        }
+        return flattened;
+    }
+
+    private synchronized int bitIndex(TvContentRating contentRating) {
+        Integer index = mBitIndices.get(contentRating);
+        if (index == null) {
+            index = Math.min(mBitIndices.size(), OVERFLOW_BIT_INDEX);
+            mBitIndices.put(contentRating, index);
+            // Keeps the blocked mask valid for ratings that show up after the policy was set.
+            if (isBlocked(contentRating)) {
+                mBlockedMask |= 1L << index;
+            }
+        }
+        return index;
+    }
+
+    private boolean isBlocked(TvContentRating contentRating) {
+        return mRatingPolicy != null && mRatingPolicy.isRatingBlocked(contentRating);
+    }
+
+    private static String trim(String string, int start, int end) {
+        while (start < end && Character.isWhitespace(string.charAt(start))) {
+            ++start;
+        }
+        while (end > start && Character.isWhitespace(string.charAt(end - 1))) {
+            --end;
+        }
+        return string.substring(start, end);
+    }
+}
@@ -0,0 +1,240 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+import android.media.tv.TvInputInfo;
+import android.media.tv.TvInputManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.android.livechannel.bean.TvInputEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps the list of TV inputs up to date from {@link TvInputManager.TvInputCallback} events.
+ *
+ * <p>Each callback only touches the input it is about, on a background thread. Inputs tend to
+ * report in bursts, at boot in particular, so changes are coalesced and the listener is told
+ * about them at most once per {@link #COALESCE_WINDOW_MS}. The full input list is only fetched
+ * again on {@link #resync}.
+ *
+ * <p>The inputs are only modified on the worker thread. Readers get an immutable, sorted snapshot
+ * published through a volatile field, which is rebuilt only when an input actually changed.
+ */
+public class InputRegistry {
+    private static final long COALESCE_WINDOW_MS = 150;
+    /** Upper bound on how long a steady stream of events can hold back an update. */
+    private static final long MAX_DISPATCH_DELAY_MS = 500;
+
+    private final Context mContext;
+    private final TvInputManager mTvInputManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /** Only accessed on the worker thread. */
+    private final HashMap<String, TvInputEntity> mInputs = new HashMap<>();
+    private volatile List<TvInputEntity> mSnapshot = Collections.emptyList();
+    private boolean mDirty;
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+    private Listener mListener;
+    private long mFirstPendingChangeTime = -1;
+
+    /** Receives the input list on the main thread whenever it changed. */
+    public interface Listener {
+        void onInputsChanged(List<TvInputEntity> inputs);
+    }
+
+    public InputRegistry(Context context) {
+        mContext = context.getApplicationContext();
+        mTvInputManager = (TvInputManager) mContext.getSystemService(Context.TV_INPUT_SERVICE);
+    }
+
+    /**
+     * Starts tracking inputs and loads the current ones.
+     */
+    public void start(Listener listener) {
+        mListener = listener;
+        mWorkerThread = new HandlerThread("InputRegistry", Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mTvInputManager.registerCallback(mTvInputCallback, mWorkerHandler);
+        resync();
+    }
+
+    /**
+     * Stops tracking inputs. No more updates are delivered afterwards.
+     */
+    public void stop() {
+        mTvInputManager.unregisterCallback(mTvInputCallback);
+        mWorkerThread.quitSafely();
+        mMainHandler.removeCallbacksAndMessages(null);
+        mListener = null;
+    }
+
+    /**
+     * Throws away what is known about inputs and enumerates them all again.
+     */
+    public void resync() {
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                List<TvInputInfo> tvInputInfos = mTvInputManager.getTvInputList();
+                HashSet<String> staleInputIds = new HashSet<>(mInputs.keySet());
+                if (tvInputInfos != null) {
+                    for (TvInputInfo tvInputInfo : tvInputInfos) {
+                        putInput(tvInputInfo);
+                        staleInputIds.remove(tvInputInfo.getId());
+                    }
+                }
+                for (String inputId : staleInputIds) {
+                    removeInput(inputId);
+                }
+                dispatchNow();
+            }
+        });
+    }
+
+    /**
+     * @return The inputs currently known, sorted by label. The list is immutable and can be read
+     * from any thread.
+     */
+    public List<TvInputEntity> getInputList() {
+        return mSnapshot;
+    }
+
+    private void putInput(TvInputInfo tvInputInfo) {
+        if (tvInputInfo == null || tvInputInfo.getId() == null) {
+            return;
+        }
+        // Label and icon are resolved here, on the worker thread, never while binding.
+        TvInputEntity tvInputEntity = TvInputEntity.fromTvInputInfo(mContext, tvInputInfo);
+        Util.LOG("tv input info:" + tvInputEntity.getLabel());
+        TvInputEntity previous = mInputs.put(tvInputEntity.getId(), tvInputEntity);
+        if (previous == null || !previous.contentEquals(tvInputEntity)) {
+            mDirty = true;
+        }
+    }
+
+    private void removeInput(String inputId) {
+        if (mInputs.remove(inputId) != null) {
+            mDirty = true;
+        }
+    }
+
+    private boolean hasInput(String inputId) {
+        return mInputs.containsKey(inputId);
+    }
+
+    /**
+     * Publishes a new snapshot if anything changed since the last one.
+     *
+     * @return Whether a new snapshot was published.
+     */
+    private boolean publish() {
+        if (!mDirty) {
+            return false;
+        }
+        mDirty = false;
+        List<TvInputEntity> snapshot = new ArrayList<>(mInputs.values());
+        Collections.sort(snapshot, LABEL_COMPARATOR);
+        mSnapshot = Collections.unmodifiableList(snapshot);
+        return true;
+    }
+
+    private void scheduleDispatch() {
+        long now = SystemClock.uptimeMillis();
+        if (mFirstPendingChangeTime < 0) {
+            mFirstPendingChangeTime = now;
+        }
+        mWorkerHandler.removeCallbacks(mDispatchRunnable);
+        if (now - mFirstPendingChangeTime >= MAX_DISPATCH_DELAY_MS) {
+            dispatchNow();
+        } else {
+            mWorkerHandler.postDelayed(mDispatchRunnable, COALESCE_WINDOW_MS);
+        }
+    }
+
+    private void dispatchNow() {
+        mWorkerHandler.removeCallbacks(mDispatchRunnable);
+        mFirstPendingChangeTime = -1;
+        if (!publish()) {
+            return;
+        }
+        final List<TvInputEntity> inputs = mSnapshot;
+        Util.LOG("tv input size:" + inputs.size());
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onInputsChanged(inputs);
+                }
+            }
+        });
+    }
+
+    private static final Comparator<TvInputEntity> LABEL_COMPARATOR =
+            new Comparator<TvInputEntity>() {
+                @Override
+                public int compare(TvInputEntity lhs, TvInputEntity rhs) {
+                    int result = compareLabels(lhs.getLabel(), rhs.getLabel());
+                    return result != 0 ? result : lhs.getId().compareTo(rhs.getId());
+                }
+
+                private int compareLabels(CharSequence lhs, CharSequence rhs) {
+                    if (lhs == null || rhs == null) {
+                        return lhs == null ? (rhs == null ? 0 : 1) : -1;
+                    }
+                    return lhs.toString().compareToIgnoreCase(rhs.toString());
+                }
+            };
+
+    private final Runnable mDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatchNow();
+        }
+    };
+
+    private final TvInputManager.TvInputCallback mTvInputCallback =
+            new TvInputManager.TvInputCallback() {
+                @Override
+                public void onInputStateChanged(String inputId, int state) {
+                    // The state isn't shown, only an input we don't know about yet matters.
+                    if (!hasInput(inputId)) {
+                        putInput(mTvInputManager.getTvInputInfo(inputId));
+                        scheduleDispatch();
+                    }
+                }
+
+                @Override
+                public void onInputAdded(String inputId) {
+                    putInput(mTvInputManager.getTvInputInfo(inputId));
+                    scheduleDispatch();
+                }
+
+                @Override
+                public void onInputRemoved(String inputId) {
+                    removeInput(inputId);
+                    scheduleDispatch();
+                }
+
+                @Override
+                public void onInputUpdated(String inputId) {
+                    putInput(mTvInputManager.getTvInputInfo(inputId));
+                    scheduleDispatch();
+                }
+
+                @Override
+                public void onTvInputInfoUpdated(TvInputInfo inputInfo) {
+                    putInput(inputInfo);
+                    scheduleDispatch();
+                }
+            };
+}
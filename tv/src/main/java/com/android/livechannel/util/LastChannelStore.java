@@ -0,0 +1,128 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the last tuned channel in a record of a few bytes, small enough to be read
+ * synchronously at startup so the channel can be tuned before anything else is loaded.
+ */
+public class LastChannelStore {
+    private static final String TAG = "LastChannelStore";
+    private static final String FILE_NAME = "last_channel";
+    private static final int VERSION = 2;
+    /** Records without the locked flag. */
+    private static final int VERSION_WITHOUT_LOCK = 1;
+
+    private static final TaskScope WRITE_SCOPE = new TaskScope();
+
+    private final AtomicFile mFile;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /** The lock state of a channel saved before it was recorded. */
+    public static final int LOCK_UNKNOWN = -1;
+    public static final int UNLOCKED = 0;
+    public static final int LOCKED = 1;
+
+    /** The last tuned channel. */
+    public static class Record {
+        public final long mChannelId;
+        public final String mInputId;
+        /**
+         * Whether the channel was locked when saved: {@link #LOCKED}, {@link #UNLOCKED} or
+         * {@link #LOCK_UNKNOWN}.
+         */
+        public final int mLockState;
+
+        Record(long channelId, String inputId, int lockState) {
+            mChannelId = channelId;
+            mInputId = inputId;
+            mLockState = lockState;
+        }
+    }
+
+    public LastChannelStore(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Reads the record on the calling thread.
+     *
+     * @return The last tuned channel, or {@code null} if there is none or it can't be read.
+     */
+    public Record read() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(mFile.openRead());
+            int version = in.readInt();
+            if (version == VERSION_WITHOUT_LOCK) {
+                return new Record(in.readLong(), in.readUTF(), LOCK_UNKNOWN);
+            }
+            if (version != VERSION) {
+                return null;
+            }
+            return new Record(in.readLong(), in.readUTF(),
+                    in.readBoolean() ? LOCKED : UNLOCKED);
+        } catch (IOException e) {
+            // Not written yet, or by an incompatible version.
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing was written, nothing is lost.
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves {@code channelId} of {@code inputId} as the last tuned channel, on a background
+     * thread. Only the latest of writes queued in a row reaches the disk.
+     *
+     * @param locked Whether the channel is locked, so it isn't tuned at startup before parental
+     * controls are checked.
+     */
+    public void write(final long channelId, final String inputId, final boolean locked) {
+        final int generation = mGeneration.incrementAndGet();
+        WRITE_SCOPE.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                synchronized (mFile) {
+                    if (generation == mGeneration.get()) {
+                        writeRecord(channelId, inputId, locked);
+                    }
+                }
+            }
+        });
+    }
+
+    private void writeRecord(long channelId, String inputId, boolean locked) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(VERSION);
+            out.writeLong(channelId);
+            out.writeUTF(inputId);
+            out.writeBoolean(locked);
+            out.flush();
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save the last channel", e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+}
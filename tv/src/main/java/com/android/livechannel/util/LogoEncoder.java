@@ -0,0 +1,93 @@
+package com.android.livechannel.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Shrinks channel logos before they are stored in the TV provider, so every client reading a
+ * logo decodes a small image instead of whatever the source happened to serve.
+ */
+public class LogoEncoder {
+    private static final String TAG = "LogoEncoder";
+    private static final int QUALITY = 90;
+
+    private final int mMaxSize;
+
+    /**
+     * @param maxSize The maximum width and height, in pixels, of a stored logo.
+     */
+    public LogoEncoder(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return Whether a logo of the given dimensions is larger than the maximum logo size and
+     * has to go through {@link #encode} before it is stored.
+     */
+    public boolean needsEncoding(int width, int height) {
+        return width <= 0 || height <= 0 || width > mMaxSize || height > mMaxSize;
+    }
+
+    /**
+     * Decodes {@code data}, scales it down to fit the maximum logo size and re-encodes it.
+     *
+     * @param data The logo as served by its source.
+     * @return The re-encoded logo, or {@code data} itself if it can't be decoded, or was not
+     * scaled down and re-encoding would not make it smaller.
+     */
+    public byte[] encode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            Log.w(TAG, "Unable to decode logo bounds, storing it as is");
+            return data;
+        }
+
+        // Let the decoder drop whole powers of two first, so a huge source never gets decoded
+        // at full size.
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (width / (options.inSampleSize * 2) >= mMaxSize
+                && height / (options.inSampleSize * 2) >= mMaxSize) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null) {
+            Log.w(TAG, "Unable to decode logo, storing it as is");
+            return data;
+        }
+
+        float scale = Math.min(1f, Math.min((float) mMaxSize / bitmap.getWidth(),
+                (float) mMaxSize / bitmap.getHeight()));
+        if (scale < 1f) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        boolean encoded = bitmap.compress(Bitmap.CompressFormat.WEBP, QUALITY, os);
+        bitmap.recycle();
+        if (!encoded) {
+            Log.w(TAG, "Unable to encode logo, storing it as is");
+            return data;
+        }
+        // Once scaled, the smaller image is kept even if its bytes aren't, or readers would
+        // decode the full size again.
+        boolean scaled = options.inSampleSize > 1 || scale < 1f;
+        if (!scaled && os.size() >= data.length) {
+            return data;
+        }
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,33 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Configures the two cache levels Glide uses for channel logos: a bounded in-memory LRU of
+ * decoded bitmaps and a dedicated disk cache of the downsampled results.
+ */
+public class LogoGlideModule implements GlideModule {
+    private static final String DISK_CACHE_NAME = "channel_logos";
+    private static final int DISK_CACHE_SIZE = 32 * 1024 * 1024;
+    private static final int MAX_MEMORY_CACHE_SIZE = 16 * 1024 * 1024;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        int memoryCacheSize = Math.min(new MemorySizeCalculator(context).getMemoryCacheSize(),
+                MAX_MEMORY_CACHE_SIZE);
+        builder.setMemoryCache(new LruResourceCache(memoryCacheSize));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_NAME,
+                DISK_CACHE_SIZE));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers, per channel logo, which URL it was last written from together with the HTTP
+ * validators and a hash of the written bytes, so unchanged logos are neither fetched nor
+ * written again on the next channel update. Listeners are told when a logo is rewritten, as the
+ * provider's copy changes in place.
+ */
+public class LogoLedger {
+    private static final String PREFERENCES_FILE_KEY = "logo_ledger";
+
+    private static LogoLedger sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final Gson mGson = new Gson();
+    /** The hashes handed out by {@link #getHash}, by logo URI. */
+    private final Map<String, String> mHashes = new HashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    /** Told on the main thread whenever a logo was rewritten or forgotten. */
+    public interface Listener {
+        void onLogoChanged(Uri logoUri);
+    }
+
+    public static synchronized LogoLedger getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LogoLedger(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LogoLedger(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES_FILE_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Starts telling {@code listener} about rewritten logos. Must be called on the main thread.
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Stops telling {@code listener} about rewritten logos. Must be called on the main thread.
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @param logoUri The {@link android.media.tv.TvContract#buildChannelLogoUri} target.
+     * @return The entry recorded for the logo, or {@code null} if it was never written.
+     */
+    public synchronized Entry get(Uri logoUri) {
+        String json = mPreferences.getString(logoUri.toString(), null);
+        if (TextUtils.isEmpty(json)) {
+            return null;
+        }
+        try {
+            return mGson.fromJson(json, Entry.class);
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param logoUri The {@link android.media.tv.TvContract#buildChannelLogoUri} target.
+     * @return The hash of what was last written to the logo, or an empty string if it was never
+     * written. Changes whenever the logo is rewritten, so it can tell cached copies apart.
+     */
+    public synchronized String getHash(Uri logoUri) {
+        String key = logoUri.toString();
+        String hash = mHashes.get(key);
+        if (hash == null) {
+            Entry entry = get(logoUri);
+            hash = entry != null && entry.getHash() != null ? entry.getHash() : "";
+            mHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    public synchronized void put(Uri logoUri, Entry entry) {
+        mHashes.remove(logoUri.toString());
+        mPreferences.edit().putString(logoUri.toString(), mGson.toJson(entry)).apply();
+        notifyLogoChanged(logoUri);
+    }
+
+    public synchronized void remove(Uri logoUri) {
+        mHashes.remove(logoUri.toString());
+        mPreferences.edit().remove(logoUri.toString()).apply();
+        notifyLogoChanged(logoUri);
+    }
+
+    private void notifyLogoChanged(final Uri logoUri) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : new ArrayList<>(mListeners)) {
+                    listener.onLogoChanged(logoUri);
+                }
+            }
+        });
+    }
+
+    /** What was last written to a channel logo. */
+    public static final class Entry {
+        private String mUrl;
+        private String mETag;
+        private String mLastModified;
+        private String mHash;
+
+        public Entry(String url, String eTag, String lastModified, String hash) {
+            mUrl = url;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        public String getHash() {
+            return mHash;
+        }
+    }
+}
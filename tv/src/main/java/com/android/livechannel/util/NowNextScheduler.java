@@ -0,0 +1,194 @@
+package com.android.livechannel.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+
+import com.android.livechannel.bean.TifProgramEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the program currently on each visible channel up to date.
+ *
+ * <p>Instead of polling, the scheduler finds the earliest time any visible channel changes
+ * program, or runs out of loaded programs, and wakes once at that time on the main thread. Only
+ * the channels whose program actually changed are reported. Programs are loaded through
+ * {@link ProgramRepository} and kept in a {@link ProgramIntervalIndex} per channel, which are
+ * dropped and loaded again whenever programs change in the provider. Must be used on the main
+ * thread.
+ */
+public class NowNextScheduler {
+    /** Boxed once, so looking up channels without a value doesn't allocate. */
+    private static final Long NONE = Long.MIN_VALUE;
+    /** Programs change in bursts while a guide is synced, they are reloaded once it settles. */
+    private static final long RELOAD_DELAY_MS = 300;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ProgramRepository mProgramRepository;
+    private final TaskScope mTaskScope;
+    private final Listener mListener;
+    private final LongSparseArray<ProgramIntervalIndex> mIndices = new LongSparseArray<>();
+    /** The end of the last window merged into each channel's index. */
+    private final LongSparseArray<Long> mLoadedUntil = new LongSparseArray<>();
+    /** The window last asked for each channel, so it isn't asked for again while loading. */
+    private final LongSparseArray<Long> mRequestedWindows = new LongSparseArray<>();
+    private final LongSparseArray<TifProgramEntity> mCurrentPrograms = new LongSparseArray<>();
+    private final ProgramIntervalIndex.NowNext mNowNext = new ProgramIntervalIndex.NowNext();
+    private long[] mVisibleChannelIds = new long[0];
+    private boolean mPaused;
+    /** The {@link ProgramRepository#getGeneration} the loaded programs are from. */
+    private int mGeneration;
+
+    /** Told on the main thread which rows to refresh. */
+    public interface Listener {
+        void onCurrentProgramChanged(long channelId);
+    }
+
+    public NowNextScheduler(Context context, TaskScope taskScope, Listener listener) {
+        mProgramRepository = ProgramRepository.getInstance(context);
+        mTaskScope = taskScope;
+        mListener = listener;
+        mGeneration = mProgramRepository.getGeneration();
+        mProgramRepository.addListener(mProgramsListener);
+    }
+
+    /**
+     * @return The program on {@code channelId} as last evaluated, or {@code null} if there is
+     * none or the channel isn't visible.
+     */
+    public TifProgramEntity getCurrentProgram(long channelId) {
+        return mCurrentPrograms.get(channelId);
+    }
+
+    /**
+     * Sets the channels whose programs are followed, usually those on screen.
+     */
+    public void setVisibleChannels(long[] channelIds) {
+        mVisibleChannelIds = channelIds;
+        update();
+    }
+
+    /**
+     * Stops waking up, for example while the channels aren't shown.
+     */
+    public void pause() {
+        if (!mPaused) {
+            mPaused = true;
+            mProgramRepository.removeListener(mProgramsListener);
+        }
+        mHandler.removeCallbacks(mUpdateRunnable);
+    }
+
+    /**
+     * Catches up with what changed while paused and starts waking up again.
+     */
+    public void resume() {
+        if (mPaused) {
+            mPaused = false;
+            mProgramRepository.addListener(mProgramsListener);
+        }
+        update();
+    }
+
+    private void update() {
+        mHandler.removeCallbacks(mUpdateRunnable);
+        if (mPaused) {
+            return;
+        }
+        int generation = mProgramRepository.getGeneration();
+        if (generation != mGeneration) {
+            // The provider doesn't say which channels changed, so everything is loaded again.
+            mGeneration = generation;
+            mIndices.clear();
+            mLoadedUntil.clear();
+            mRequestedWindows.clear();
+        }
+        long now = System.currentTimeMillis();
+        long wakeTime = Long.MAX_VALUE;
+        long windowStart = ProgramRepository.getWindowStart(now);
+        long[] missing = null;
+        int missingCount = 0;
+        for (long channelId : mVisibleChannelIds) {
+            long loadedUntil = mLoadedUntil.get(channelId, NONE);
+            if (loadedUntil <= now) {
+                if (mRequestedWindows.get(channelId, NONE) != windowStart) {
+                    if (missing == null) {
+                        missing = new long[mVisibleChannelIds.length];
+                    }
+                    missing[missingCount++] = channelId;
+                    mRequestedWindows.put(channelId, windowStart);
+                }
+            } else {
+                // Past the loaded programs nothing is known, wake up to load more.
+                wakeTime = Math.min(wakeTime, loadedUntil);
+            }
+            // Until a dropped index is loaded again, the program last evaluated is kept.
+            ProgramIntervalIndex index = mIndices.get(channelId);
+            if (index != null) {
+                index.lookup(now, mNowNext);
+                TifProgramEntity current = mNowNext.mNow;
+                wakeTime = Math.min(wakeTime, mNowNext.mNextBoundary);
+                if (current != mCurrentPrograms.get(channelId)) {
+                    mCurrentPrograms.put(channelId, current);
+                    mListener.onCurrentProgramChanged(channelId);
+                }
+            }
+        }
+        if (missingCount > 0) {
+            load(missingCount == missing.length ? missing : Arrays.copyOf(missing,
+                    missingCount), now);
+        }
+        if (wakeTime != Long.MAX_VALUE) {
+            mHandler.postDelayed(mUpdateRunnable, Math.max(0, wakeTime - now));
+        }
+    }
+
+    private void load(long[] channelIds, long timeMs) {
+        final int generation = mGeneration;
+        mProgramRepository.loadWindow(channelIds, timeMs, mTaskScope,
+                new ProgramRepository.Callback() {
+                    @Override
+                    public void onProgramsLoaded(long windowStart,
+                            LongSparseArray<List<TifProgramEntity>> programs) {
+                        if (generation != mProgramRepository.getGeneration()) {
+                            // Possibly read before a change, the reload after it asks again.
+                            return;
+                        }
+                        long windowEnd = windowStart + ProgramRepository.WINDOW_MS;
+                        for (int i = 0; i < programs.size(); ++i) {
+                            long channelId = programs.keyAt(i);
+                            ProgramIntervalIndex index = mIndices.get(channelId);
+                            if (index == null) {
+                                index = new ProgramIntervalIndex();
+                                mIndices.put(channelId, index);
+                            }
+                            index.pruneBefore(windowStart);
+                            index.merge(programs.valueAt(i));
+                            if (mLoadedUntil.get(channelId, NONE) < windowEnd) {
+                                mLoadedUntil.put(channelId, windowEnd);
+                            }
+                        }
+                        update();
+                    }
+                });
+    }
+
+    private final ProgramRepository.Listener mProgramsListener =
+            new ProgramRepository.Listener() {
+                @Override
+                public void onProgramsChanged() {
+                    mHandler.removeCallbacks(mUpdateRunnable);
+                    mHandler.postDelayed(mUpdateRunnable, RELOAD_DELAY_MS);
+                }
+            };
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+        }
+    };
+}
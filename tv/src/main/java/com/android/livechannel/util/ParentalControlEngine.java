@@ -0,0 +1,151 @@
+package com.android.livechannel.util;
+
+import android.util.LongSparseArray;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Keeps track of which channels of the loaded lineup are blocked, so checking a channel while
+ * zapping is a single bit test.
+ *
+ * <p>A channel is blocked when parental controls are enabled and it is either locked or its
+ * current program carries a blocked rating. Policy and per-channel changes only re-evaluate the
+ * channels they can affect. All methods must be called on the main thread.
+ */
+public class ParentalControlEngine {
+    private static final int INVALID_INDEX = -1;
+
+    private final ContentRatingCodec mCodec = ContentRatingCodec.getInstance();
+    private final LongSparseArray<Integer> mIndices = new LongSparseArray<>();
+    private final BitSet mLocked = new BitSet();
+    private final BitSet mBlocked = new BitSet();
+    private long[] mRatingMasks = new long[0];
+    private int mSize;
+    private boolean mEnabled;
+    private long mBlockedMask;
+
+    /**
+     * Replaces the lineup the engine evaluates. Indices passed to the other methods are positions
+     * in {@code channels}.
+     */
+    public void setLineup(List<TifChannelEntity> channels) {
+        // The ratings of the current programs outlive the lineup they were set with.
+        LongSparseArray<Integer> oldIndices = mIndices.clone();
+        long[] oldRatingMasks = mRatingMasks;
+        mSize = channels.size();
+        mIndices.clear();
+        mLocked.clear();
+        mRatingMasks = new long[mSize];
+        for (int i = 0; i < mSize; ++i) {
+            TifChannelEntity channel = channels.get(i);
+            mIndices.put(channel.getId(), i);
+            if (channel.getLocked() != 0) {
+                mLocked.set(i);
+            }
+            Integer oldIndex = oldIndices.get(channel.getId());
+            if (oldIndex != null) {
+                mRatingMasks[i] = oldRatingMasks[oldIndex];
+            }
+        }
+        mBlockedMask = mCodec.getBlockedMask();
+        mBlocked.clear();
+        for (int i = 0; i < mSize; ++i) {
+            evaluate(i);
+        }
+    }
+
+    /**
+     * Enables or disables parental controls, see
+     * {@link android.media.tv.TvInputManager#isParentalControlsEnabled}.
+     */
+    public void setParentalControlsEnabled(boolean enabled) {
+        if (mEnabled == enabled) {
+            return;
+        }
+        mEnabled = enabled;
+        mBlocked.clear();
+        for (int i = 0; i < mSize; ++i) {
+            evaluate(i);
+        }
+    }
+
+    public boolean isParentalControlsEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Sets what decides whether a rating is blocked, usually
+     * {@link android.media.tv.TvInputManager#isRatingBlocked}. Also to be called again when the
+     * blocked ratings change, see
+     * {@link android.media.tv.TvInputManager#ACTION_BLOCKED_RATINGS_CHANGED}.
+     */
+    public void setRatingPolicy(ContentRatingCodec.RatingPolicy ratingPolicy) {
+        mCodec.setRatingPolicy(ratingPolicy);
+        long blockedMask = mCodec.getBlockedMask();
+        long changedMask = mBlockedMask ^ blockedMask;
+        mBlockedMask = blockedMask;
+        if (changedMask == 0) {
+            return;
+        }
+        for (int i = 0; i < mSize; ++i) {
+            if ((mRatingMasks[i] & changedMask) != 0) {
+                evaluate(i);
+            }
+        }
+    }
+
+    /**
+     * Updates the {@link android.media.tv.TvContract.Channels#COLUMN_LOCKED} state of a channel.
+     */
+    public void setChannelLocked(int index, boolean locked) {
+        mLocked.set(index, locked);
+        evaluate(index);
+    }
+
+    /**
+     * Updates the ratings of the program currently on a channel, as a
+     * {@link ContentRatingCodec} mask.
+     */
+    public void setChannelRatings(int index, long ratingMask) {
+        mRatingMasks[index] = ratingMask;
+        evaluate(index);
+    }
+
+    /**
+     * Updates the ratings of the channel with the given {@code _ID} from the program now on it.
+     *
+     * @param contentRating The comma-separated ratings of the current program, or {@code null}
+     * if it isn't rated or nothing is known to be on.
+     */
+    public void setCurrentProgramRating(long channelId, String contentRating) {
+        int index = indexOf(channelId);
+        if (index != INVALID_INDEX) {
+            setChannelRatings(index, mCodec.toMask(contentRating));
+        }
+    }
+
+    /**
+     * @return The lineup index of the channel with the given {@code _ID}, or {@code -1}.
+     */
+    public int indexOf(long channelId) {
+        Integer index = mIndices.get(channelId);
+        return index != null ? index : INVALID_INDEX;
+    }
+
+    /**
+     * @return Whether the channel at {@code index} of the lineup is blocked.
+     */
+    public boolean isBlocked(int index) {
+        return index >= 0 && mBlocked.get(index);
+    }
+
+    private void evaluate(int index) {
+        // The codec's mask may have grown with ratings seen after the last policy change.
+        mBlockedMask |= mCodec.getBlockedMask();
+        mBlocked.set(index, mEnabled
+                && (mLocked.get(index) || (mRatingMasks[index] & mBlockedMask) != 0));
+    }
+}
@@ -0,0 +1,159 @@
+package com.android.livechannel.util;
+
+import com.android.livechannel.bean.TifProgramEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The programs of one channel as sorted, non-overlapping intervals, for finding what is on now
+ * and next with a binary search.
+ *
+ * <p>Start and end times are kept in primitive arrays next to the programs. Windows loaded by
+ * {@link ProgramRepository} are merged in as they arrive: appending a later window just copies it
+ * at the end, programs loaded again replace the ones they overlap. Lookups fill a caller-owned
+ * {@link NowNext}, so resolving a screen of rows allocates nothing. Not thread-safe.
+ */
+public class ProgramIntervalIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mStarts = new long[INITIAL_CAPACITY];
+    private long[] mEnds = new long[INITIAL_CAPACITY];
+    private TifProgramEntity[] mPrograms = new TifProgramEntity[INITIAL_CAPACITY];
+    private int mSize;
+
+    /** The result of {@link #lookup}, meant to be reused across lookups. */
+    public static class NowNext {
+        /** The program on at the time looked up, or {@code null} in a gap. */
+        public TifProgramEntity mNow;
+        /** The first program starting after that time, or {@code null}. */
+        public TifProgramEntity mNext;
+        /**
+         * When {@link #mNow} or {@link #mNext} change: the end of the current program, or the
+         * start of the next one in a gap. {@link Long#MAX_VALUE} if nothing is coming.
+         */
+        public long mNextBoundary;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Merges {@code programs}, sorted by start time, into the index. Programs already in the index
+     * that overlap one of them are replaced.
+     */
+    public void merge(List<TifProgramEntity> programs) {
+        int count = programs.size();
+        if (count == 0) {
+            return;
+        }
+        if (mSize == 0 || programs.get(0).getStartTimeUtcMillis() >= mEnds[mSize - 1]) {
+            // The usual case of the next window, nothing to interleave.
+            ensureCapacity(mSize + count);
+            for (int i = 0; i < count; ++i) {
+                set(mSize++, programs.get(i));
+            }
+            return;
+        }
+        long[] starts = new long[Math.max(INITIAL_CAPACITY, mSize + count)];
+        long[] ends = new long[starts.length];
+        TifProgramEntity[] merged = new TifProgramEntity[starts.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < mSize || j < count) {
+            TifProgramEntity program = j < count ? programs.get(j) : null;
+            if (program == null || (i < mSize && mStarts[i] < program.getStartTimeUtcMillis())) {
+                // An old program survives unless it overlaps the new ones around it.
+                boolean overlapsPrevious = j > 0
+                        && programs.get(j - 1).getEndTimeUtcMillis() > mStarts[i];
+                boolean overlapsNext = program != null
+                        && mEnds[i] > program.getStartTimeUtcMillis();
+                if (!overlapsPrevious && !overlapsNext) {
+                    starts[size] = mStarts[i];
+                    ends[size] = mEnds[i];
+                    merged[size++] = mPrograms[i];
+                }
+                ++i;
+            } else {
+                // Also replaces the old program with the same start, if any.
+                if (i < mSize && mStarts[i] == program.getStartTimeUtcMillis()) {
+                    ++i;
+                }
+                starts[size] = program.getStartTimeUtcMillis();
+                ends[size] = program.getEndTimeUtcMillis();
+                merged[size++] = program;
+                ++j;
+            }
+        }
+        mStarts = starts;
+        mEnds = ends;
+        mPrograms = merged;
+        mSize = size;
+    }
+
+    /**
+     * Drops the programs that ended at or before {@code timeMs}.
+     */
+    public void pruneBefore(long timeMs) {
+        int first = 0;
+        while (first < mSize && mEnds[first] <= timeMs) {
+            ++first;
+        }
+        if (first == 0) {
+            return;
+        }
+        int remaining = mSize - first;
+        System.arraycopy(mStarts, first, mStarts, 0, remaining);
+        System.arraycopy(mEnds, first, mEnds, 0, remaining);
+        System.arraycopy(mPrograms, first, mPrograms, 0, remaining);
+        Arrays.fill(mPrograms, remaining, mSize, null);
+        mSize = remaining;
+    }
+
+    /**
+     * Finds the programs on at {@code timeMs} and right after it.
+     *
+     * @param out Receives the result.
+     */
+    public void lookup(long timeMs, NowNext out) {
+        // The last program starting at or before timeMs.
+        int low = 0;
+        int high = mSize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mStarts[mid] <= timeMs) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int index = high;
+        int next = index + 1;
+        if (index >= 0 && timeMs < mEnds[index]) {
+            out.mNow = mPrograms[index];
+            out.mNextBoundary = mEnds[index];
+        } else {
+            out.mNow = null;
+            out.mNextBoundary = next < mSize ? mStarts[next] : Long.MAX_VALUE;
+        }
+        out.mNext = next < mSize ? mPrograms[next] : null;
+    }
+
+    private void set(int index, TifProgramEntity program) {
+        mStarts[index] = program.getStartTimeUtcMillis();
+        mEnds[index] = program.getEndTimeUtcMillis();
+        mPrograms[index] = program;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mStarts.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, 2 * mStarts.length);
+        mStarts = Arrays.copyOf(mStarts, newCapacity);
+        mEnds = Arrays.copyOf(mEnds, newCapacity);
+        mPrograms = Arrays.copyOf(mPrograms, newCapacity);
+    }
+}
@@ -0,0 +1,211 @@
+package com.android.livechannel.util;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.media.tv.TvContract;
+import android.media.tv.TvInputInfo;
+import android.media.tv.TvInputManager;
+import android.os.CancellationSignal;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes programs that ended before a horizon, so they don't slow down guide queries.
+ *
+ * <p>Inputs are pruned one after the other, each in batches of
+ * {@link #CHANNELS_PER_BATCH} channels. After every batch the position is saved, so a job
+ * stopped by the system resumes where it left off. When a batch is slow, the provider is busy
+ * and the job backs off before the next one.
+ */
+public class ProgramPruneService extends JobService {
+    private static final String TAG = "ProgramPruneService";
+    private static final int JOB_ID = 1;
+    private static final String EXTRA_HORIZON_MS = "horizon_ms";
+    private static final long DEFAULT_HORIZON_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long PERIOD_MS = TimeUnit.DAYS.toMillis(1);
+    private static final int CHANNELS_PER_BATCH = 20;
+    /** A batch taking longer than this means the provider is under load. */
+    private static final long SLOW_BATCH_MS = 500;
+    private static final long BACK_OFF_MS = 2000;
+
+    private static final String PREFERENCES = "program_prune";
+    private static final String KEY_INPUT_ID = "input_id";
+    private static final String KEY_CHANNEL_ID = "channel_id";
+
+    private TaskScope mTaskScope;
+
+    /**
+     * Schedules pruning once a day, while the device is idle, of the programs that ended more
+     * than {@code horizonMs} ago.
+     */
+    public static void schedule(Context context, long horizonMs) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        JobInfo pendingJob = jobScheduler.getPendingJob(JOB_ID);
+        if (pendingJob != null && pendingJob.getExtras().getLong(EXTRA_HORIZON_MS,
+                DEFAULT_HORIZON_MS) == horizonMs) {
+            return;
+        }
+        // Otherwise scheduling again replaces the pending job and its horizon.
+        PersistableBundle extras = new PersistableBundle();
+        extras.putLong(EXTRA_HORIZON_MS, horizonMs);
+        jobScheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, ProgramPruneService.class))
+                .setPeriodic(PERIOD_MS)
+                .setRequiresDeviceIdle(true)
+                .setPersisted(false)
+                .setExtras(extras)
+                .build());
+    }
+
+    /**
+     * Schedules pruning with the default horizon of a day.
+     */
+    public static void schedule(Context context) {
+        schedule(context, DEFAULT_HORIZON_MS);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final long horizonMs = params.getExtras().getLong(EXTRA_HORIZON_MS, DEFAULT_HORIZON_MS);
+        mTaskScope = new TaskScope();
+        mTaskScope.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                try {
+                    prune(System.currentTimeMillis() - horizonMs, signal);
+                } finally {
+                    // Once stopped, the system doesn't wait for the job anymore.
+                    if (!signal.isCanceled()) {
+                        jobFinished(params, false);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The checkpoint of the last batch is saved, the next run goes on from there.
+        mTaskScope.cancel();
+        return true;
+    }
+
+    private void prune(long cutoffMs, CancellationSignal signal) {
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
+        String checkpointInputId = preferences.getString(KEY_INPUT_ID, null);
+        long checkpointChannelId = preferences.getLong(KEY_CHANNEL_ID, -1);
+        TvInputManager tvInputManager = (TvInputManager) getSystemService(TV_INPUT_SERVICE);
+        List<String> inputIds = new ArrayList<>();
+        for (TvInputInfo tvInputInfo : tvInputManager.getTvInputList()) {
+            inputIds.add(tvInputInfo.getId());
+        }
+        Collections.sort(inputIds);
+
+        ContentResolver resolver = getContentResolver();
+        long startTime = SystemClock.elapsedRealtime();
+        int pruned = 0;
+        for (String inputId : inputIds) {
+            if (checkpointInputId != null && inputId.compareTo(checkpointInputId) < 0) {
+                continue;
+            }
+            long afterChannelId = inputId.equals(checkpointInputId) ? checkpointChannelId : -1;
+            List<Long> channelIds = getChannelIds(resolver, inputId, afterChannelId, signal);
+            for (int i = 0; i < channelIds.size(); i += CHANNELS_PER_BATCH) {
+                signal.throwIfCanceled();
+                List<Long> batch = channelIds.subList(i,
+                        Math.min(i + CHANNELS_PER_BATCH, channelIds.size()));
+                long batchStart = SystemClock.elapsedRealtime();
+                pruned += pruneChannels(resolver, batch, cutoffMs);
+                preferences.edit()
+                        .putString(KEY_INPUT_ID, inputId)
+                        .putLong(KEY_CHANNEL_ID, batch.get(batch.size() - 1))
+                        .apply();
+                if (SystemClock.elapsedRealtime() - batchStart > SLOW_BATCH_MS) {
+                    backOff(signal);
+                }
+            }
+        }
+        preferences.edit().clear().apply();
+        Log.i(TAG, "Pruned " + pruned + " programs in "
+                + (SystemClock.elapsedRealtime() - startTime) + "ms");
+    }
+
+    /**
+     * @return The {@link TvContract.Channels#_ID}s of {@code inputId} above
+     * {@code afterChannelId}, ascending.
+     */
+    private static List<Long> getChannelIds(ContentResolver resolver, String inputId,
+            long afterChannelId, CancellationSignal signal) {
+        List<Long> channelIds = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(TvContract.buildChannelsUriForInput(inputId),
+                    new String[] {TvContract.Channels._ID}, null, null,
+                    TvContract.Channels._ID, signal);
+            while (cursor != null && cursor.moveToNext()) {
+                long channelId = cursor.getLong(0);
+                if (channelId > afterChannelId) {
+                    channelIds.add(channelId);
+                }
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return channelIds;
+    }
+
+    /**
+     * @return The number of programs deleted.
+     */
+    private static int pruneChannels(ContentResolver resolver, List<Long> channelIds,
+            long cutoffMs) {
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(channelIds.size());
+        String selection = TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS + " < ?";
+        String[] selectionArgs = new String[] {String.valueOf(cutoffMs)};
+        for (long channelId : channelIds) {
+            ops.add(ContentProviderOperation
+                    .newDelete(TvContract.buildProgramsUriForChannel(channelId))
+                    .withSelection(selection, selectionArgs)
+                    .build());
+        }
+        int pruned = 0;
+        try {
+            for (ContentProviderResult result : resolver.applyBatch(TvContract.AUTHORITY, ops)) {
+                if (result.count != null) {
+                    pruned += result.count;
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to prune programs", e);
+        }
+        return pruned;
+    }
+
+    private static void backOff(CancellationSignal signal) {
+        try {
+            Thread.sleep(BACK_OFF_MS);
+        } catch (InterruptedException e) {
+            // Stopped by the system, the cancelled signal ends the job.
+            Thread.currentThread().interrupt();
+        }
+        signal.throwIfCanceled();
+    }
+}
@@ -0,0 +1,242 @@
+package com.android.livechannel.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.media.tv.TvContract;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import com.android.livechannel.bean.TifProgramEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads programs of {@link TvContract.Programs} in fixed time windows per channel.
+ *
+ * <p>Windows are aligned to multiples of {@link #WINDOW_MS}, so the same window is asked for by
+ * whoever looks at that time and loaded windows can be cached. Loading a window prefetches the
+ * one after it, which is where a guide scrolls to next. The cache is dropped whenever programs
+ * change in the provider, and listeners are told so they can drop what they loaded too.
+ */
+public class ProgramRepository {
+    private static final String TAG = "ProgramRepository";
+
+    /** Length of a window. */
+    public static final long WINDOW_MS = TimeUnit.HOURS.toMillis(3);
+    /** Number of programs the cached windows may hold. */
+    private static final int CACHE_SIZE = 20000;
+
+    private static ProgramRepository sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final TaskScope mPrefetchScope = new TaskScope();
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final List<Listener> mListeners = new ArrayList<>();
+    private final LruCache<WindowKey, List<TifProgramEntity>> mWindows =
+            new LruCache<WindowKey, List<TifProgramEntity>>(CACHE_SIZE) {
+                @Override
+                protected int sizeOf(WindowKey key, List<TifProgramEntity> programs) {
+                    return programs.size() + 1;
+                }
+            };
+
+    /** Receives loaded programs on the main thread. */
+    public interface Callback {
+        /**
+         * @param programs The programs of each channel asked for, in start time order.
+         */
+        void onProgramsLoaded(long windowStart, LongSparseArray<List<TifProgramEntity>> programs);
+    }
+
+    /** Told on the main thread whenever programs changed in the provider. */
+    public interface Listener {
+        void onProgramsChanged();
+    }
+
+    public static synchronized ProgramRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProgramRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ProgramRepository(Context context) {
+        mContentResolver = context.getContentResolver();
+        mContentResolver.registerContentObserver(TvContract.Programs.CONTENT_URI, true,
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        mGeneration.incrementAndGet();
+                        mWindows.evictAll();
+                        for (Listener listener : new ArrayList<>(mListeners)) {
+                            listener.onProgramsChanged();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Starts telling {@code listener} about program changes. Must be called on the main thread.
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Stops telling {@code listener} about program changes. Must be called on the main thread.
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return A number that changes whenever programs change in the provider, so a caller can
+     * tell whether programs it loaded may be stale.
+     */
+    public int getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * @return The start of the window {@code timeMs} falls in.
+     */
+    public static long getWindowStart(long timeMs) {
+        return timeMs - timeMs % WINDOW_MS;
+    }
+
+    /**
+     * @return The cached programs of a channel in the window starting at {@code windowStart}, or
+     * {@code null} if that window isn't loaded.
+     */
+    public List<TifProgramEntity> getCachedPrograms(long channelId, long windowStart) {
+        return mWindows.get(new WindowKey(channelId, windowStart));
+    }
+
+    /**
+     * Loads the programs of {@code channelIds} in the window {@code timeMs} falls in, then
+     * prefetches the next window.
+     */
+    public void loadWindow(final long[] channelIds, long timeMs, final TaskScope scope,
+            final Callback callback) {
+        final long windowStart = getWindowStart(timeMs);
+        scope.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                final LongSparseArray<List<TifProgramEntity>> programs =
+                        loadPrograms(channelIds, windowStart, signal);
+                scope.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onProgramsLoaded(windowStart, programs);
+                    }
+                });
+                prefetch(channelIds, windowStart + WINDOW_MS);
+            }
+        });
+    }
+
+    /**
+     * Loads the programs of {@code channelIds} in the window starting at {@code windowStart} into
+     * the cache, in the background.
+     */
+    public void prefetch(final long[] channelIds, final long windowStart) {
+        mPrefetchScope.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                loadPrograms(channelIds, windowStart, signal);
+            }
+        });
+    }
+
+    private LongSparseArray<List<TifProgramEntity>> loadPrograms(long[] channelIds,
+            long windowStart, CancellationSignal signal) {
+        LongSparseArray<List<TifProgramEntity>> programs =
+                new LongSparseArray<>(channelIds.length);
+        for (long channelId : channelIds) {
+            signal.throwIfCanceled();
+            WindowKey key = new WindowKey(channelId, windowStart);
+            List<TifProgramEntity> channelPrograms = mWindows.get(key);
+            if (channelPrograms == null) {
+                int generation = mGeneration.get();
+                channelPrograms = queryPrograms(channelId, windowStart, signal);
+                if (channelPrograms == null) {
+                    // Not cached, so the next load tries again.
+                    channelPrograms = Collections.emptyList();
+                } else if (generation == mGeneration.get()) {
+                    // Otherwise programs changed meanwhile and what was read may be stale.
+                    mWindows.put(key, channelPrograms);
+                }
+            }
+            programs.put(channelId, channelPrograms);
+        }
+        return programs;
+    }
+
+    /**
+     * @return The programs, or {@code null} if they couldn't be read.
+     */
+    private List<TifProgramEntity> queryPrograms(long channelId, long windowStart,
+            CancellationSignal signal) {
+        Uri uri = TvContract.buildProgramsUriForChannel(channelId, windowStart,
+                windowStart + WINDOW_MS);
+        List<TifProgramEntity> programs = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = mContentResolver.query(uri, TifProgramEntity.PROJECTION, null, null,
+                    TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS, signal);
+            if (cursor == null) {
+                return null;
+            }
+            while (cursor.moveToNext()) {
+                programs.add(TifProgramEntity.fromCursor(cursor));
+            }
+        } catch (OperationCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to get programs of channel " + channelId, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return Collections.unmodifiableList(programs);
+    }
+
+    private static final class WindowKey {
+        private final long mChannelId;
+        private final long mWindowStart;
+
+        WindowKey(long channelId, long windowStart) {
+            mChannelId = channelId;
+            mWindowStart = windowStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) o;
+            return mChannelId == other.mChannelId && mWindowStart == other.mWindowStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (mChannelId ^ (mChannelId >>> 32))
+                    + (int) (mWindowStart ^ (mWindowStart >>> 32));
+        }
+    }
+}
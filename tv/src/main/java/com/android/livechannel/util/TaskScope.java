@@ -0,0 +1,242 @@
+package com.android.livechannel.util;
+
+import android.app.Activity;
+import android.app.Application;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A group of background tasks that are cancelled together, usually when the activity or fragment
+ * that started them goes away.
+ *
+ * <p>Each task gets a {@link CancellationSignal} it should pass to content provider queries and
+ * check between units of work. Cancelling the scope cancels every signal, interrupts the running
+ * tasks, drops pending results and releases all references the scope holds.
+ */
+public class TaskScope {
+    private static final String TAG = "TaskScope";
+    private static final int POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "TaskScope #" + mCount.incrementAndGet());
+                    }
+                });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Set<TaskFuture> mTasks = new HashSet<>();
+    private boolean mCancelled;
+    private Runnable mOnCancel;
+
+    /** A unit of background work run by a {@link TaskScope}. */
+    public interface Task {
+        /**
+         * Runs on a background thread. Implementations should return as soon as possible once
+         * {@code signal} is cancelled.
+         */
+        void run(CancellationSignal signal);
+    }
+
+    /**
+     * Returns a scope that is cancelled when the view of {@code fragment} is destroyed.
+     */
+    public static TaskScope forFragment(final Fragment fragment) {
+        final TaskScope scope = new TaskScope();
+        final FragmentManager fragmentManager = fragment.getFragmentManager();
+        final FragmentManager.FragmentLifecycleCallbacks callbacks =
+                new FragmentManager.FragmentLifecycleCallbacks() {
+                    @Override
+                    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+                        if (f == fragment) {
+                            scope.cancel();
+                        }
+                    }
+                };
+        fragmentManager.registerFragmentLifecycleCallbacks(callbacks, false);
+        scope.mOnCancel = new Runnable() {
+            @Override
+            public void run() {
+                fragmentManager.unregisterFragmentLifecycleCallbacks(callbacks);
+            }
+        };
+        return scope;
+    }
+
+    /**
+     * Returns a scope that is cancelled when {@code activity} is destroyed.
+     */
+    public static TaskScope forActivity(final Activity activity) {
+        final TaskScope scope = new TaskScope();
+        final Application application = activity.getApplication();
+        final Application.ActivityLifecycleCallbacks callbacks =
+                new Application.ActivityLifecycleCallbacks() {
+                    @Override
+                    public void onActivityCreated(Activity a, Bundle savedInstanceState) {
+                    }
+
+                    @Override
+                    public void onActivityStarted(Activity a) {
+                    }
+
+                    @Override
+                    public void onActivityResumed(Activity a) {
+                    }
+
+                    @Override
+                    public void onActivityPaused(Activity a) {
+                    }
+
+                    @Override
+                    public void onActivityStopped(Activity a) {
+                    }
+
+                    @Override
+                    public void onActivitySaveInstanceState(Activity a, Bundle outState) {
+                    }
+
+                    @Override
+                    public void onActivityDestroyed(Activity a) {
+                        if (a == activity) {
+                            scope.cancel();
+                        }
+                    }
+                };
+        application.registerActivityLifecycleCallbacks(callbacks);
+        scope.mOnCancel = new Runnable() {
+            @Override
+            public void run() {
+                application.unregisterActivityLifecycleCallbacks(callbacks);
+            }
+        };
+        return scope;
+    }
+
+    /**
+     * Runs {@code task} on a background thread, unless the scope is already cancelled.
+     */
+    public void launch(Task task) {
+        TaskFuture future = new TaskFuture(task);
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mTasks.add(future);
+        }
+        EXECUTOR.execute(future);
+    }
+
+    /**
+     * Runs {@code runnable} on the main thread, unless the scope is cancelled before it gets to
+     * run. Used by tasks to deliver their results.
+     */
+    public void post(final Runnable runnable) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCancelled()) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Cancels every task of this scope and drops their pending results. Tasks launched afterwards
+     * are ignored.
+     */
+    public void cancel() {
+        List<TaskFuture> tasks;
+        Runnable onCancel;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+            onCancel = mOnCancel;
+            mOnCancel = null;
+        }
+        for (TaskFuture task : tasks) {
+            task.mSignal.cancel();
+            task.cancel(true);
+            // Don't let queued tasks keep their references alive until a thread frees up.
+            EXECUTOR.remove(task);
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    private synchronized void onTaskDone(TaskFuture task) {
+        mTasks.remove(task);
+    }
+
+    private class TaskFuture extends FutureTask<Void> {
+        private final CancellationSignal mSignal;
+
+        TaskFuture(final Task task) {
+            this(task, new CancellationSignal());
+        }
+
+        private TaskFuture(final Task task, final CancellationSignal signal) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run(signal);
+                    } catch (OperationCanceledException e) {
+                        Log.d(TAG, "Task cancelled: " + task);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Task failed: " + task, e);
+                    }
+                }
+            }, null);
+            mSignal = signal;
+        }
+
+        @Override
+        protected void done() {
+            onTaskDone(this);
+        }
+    }
+}
@@ -21,12 +21,20 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.graphics.BitmapFactory;
 import android.media.tv.TvContentRating;
 import android.media.tv.TvContract;
 import android.media.tv.TvContract.Channels;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LongSparseArray;
@@ -34,16 +42,26 @@ import android.util.SparseArray;
 
 
 import com.android.livechannel.BuildConfig;
+import com.android.livechannel.R;
 import com.android.livechannel.bean.TifChannelEntity;
+import com.android.livechannel.bean.TifProgramEntity;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
-import java.net.MalformedURLException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -71,6 +89,10 @@ public class TifChannelUtils {
     private static final String TAG = "TvContractUtils";
     private static final boolean DEBUG = BuildConfig.DEBUG;
     private static final SparseArray<String> VIDEO_HEIGHT_TO_FORMAT_MAP = new SparseArray<>();
+    /** Rows per {@link ContentResolver#bulkInsert} when writing programs. */
+    private static final int PROGRAM_INSERT_CHUNK_SIZE = 500;
+    /** Scope for logo downloads that are not tied to any UI. */
+    private static final TaskScope APPLICATION_SCOPE = new TaskScope();
 
     static {
         VIDEO_HEIGHT_TO_FORMAT_MAP.put(480, Channels.VIDEO_FORMAT_480P);
@@ -88,11 +110,30 @@ public class TifChannelUtils {
 
             Uri channelsUri = TvContract.buildChannelsUriForInput(inputId);
             ContentResolver resolver = context.getContentResolver();
+            // The IDs are needed afterwards to forget the logos of the deleted channels.
+            List<Long> channelIds = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                cursor = resolver.query(channelsUri, new String[] {Channels._ID}, null, null,
+                        null);
+                while (cursor != null && cursor.moveToNext()) {
+                    channelIds.add(cursor.getLong(0));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
             resolver.delete(channelsUri,null,null);
             if (DEBUG) {
                 Log.e(TAG, "deleteAllChannels");
             }
 
+            LogoLedger ledger = LogoLedger.getInstance(context);
+            for (long channelId : channelIds) {
+                ledger.remove(TvContract.buildChannelLogoUri(channelId));
+            }
+
     }
 
     public static void deleteChannels(Context context, String inputId, List<TifChannelEntity> channels){
@@ -120,6 +161,11 @@ public class TifChannelUtils {
                 e.printStackTrace();
             }
 
+            LogoLedger ledger = LogoLedger.getInstance(context);
+            for (TifChannelEntity channel : channels) {
+                ledger.remove(TvContract.buildChannelLogoUri(channel.getId()));
+            }
+
         }
 
 
@@ -134,6 +180,20 @@ public class TifChannelUtils {
      * @hide
      */
     public static void updateChannels(Context context, String inputId, List<TifChannelEntity> channels) {
+        updateChannels(context, inputId, channels, APPLICATION_SCOPE);
+    }
+
+    /**
+     * Updates the list of available channels, downloading their logos as part of {@code scope}.
+     *
+     * @param context The application's context.
+     * @param inputId The ID of the TV input service that provides this TV channel.
+     * @param channels The updated list of channels.
+     * @param scope The scope whose cancellation stops the logo downloads.
+     * @hide
+     */
+    public static void updateChannels(Context context, String inputId,
+            List<TifChannelEntity> channels, TaskScope scope) {
         // Create a map from original network ID to channel row ID for existing channels.
 
         List<TifChannelEntity> tifChannelCacheList = new ArrayList<>();
@@ -170,8 +230,11 @@ public class TifChannelUtils {
         }
 
         // If a channel exists, update it. If not, insert a new one.
-        Map<Uri, String> logos = new HashMap<>();
-        for (TifChannelEntity channel : channels) {
+        long[] rowIds = ChannelSyncDiff.match(tifChannelCacheList, channels);
+        // Logo targets grouped by source URL, so a logo shared by many channels is fetched once.
+        Map<String, List<Uri>> logos = new HashMap<>();
+        for (int i = 0; i < rowIds.length; ++i) {
+            TifChannelEntity channel = channels.get(i);
             ContentValues values = new ContentValues();
             values.put(Channels.COLUMN_INPUT_ID, inputId);
             values.putAll(channel.toContentValues());
@@ -191,34 +254,16 @@ public class TifChannelUtils {
             if (DEBUG) {
                 Log.d(TAG, "channel originalNetworkId" + channel.getOriginalNetworkId());
             }
-            boolean channelExist  = false;
-            TifChannelEntity tifChannel = null;
-            if(tifChannelCacheList.size()>0){
-
-                for(TifChannelEntity tifChannelCache:tifChannelCacheList){
-                    if(tifChannelCache.getServiceId() == channel.getServiceId()
-                            && tifChannelCache.getTransportStreamId() == channel.getTransportStreamId()
-                            && tifChannelCache.getOriginalNetworkId() == channel.getOriginalNetworkId()){
-                        channelExist = true;
-                        tifChannel = tifChannelCache;
-                        break;
-                    }
-                }
-                tifChannelCacheList.remove(tifChannel);
-            }
-
-
-            //Long rowId = channelMap.get(channel.getOriginalNetworkId());
 
             Uri uri;
-            if (!channelExist) {
+            if (rowIds[i] == ChannelSyncDiff.NO_MATCH) {
                 uri = resolver.insert(Channels.CONTENT_URI, values);
                 if (DEBUG) {
                     Log.d(TAG, "Adding channel " + channel.getDisplayName() + " at " + uri);
                 }
             }
             else {
-                Long rowId = tifChannel.getId();
+                long rowId = rowIds[i];
                 values.put(Channels._ID, rowId);
                 uri = TvContract.buildChannelUri(rowId);
                 if (DEBUG) {
@@ -228,11 +273,16 @@ public class TifChannelUtils {
 
             }
             if (channel.getChannelLogo() != null && !TextUtils.isEmpty(channel.getChannelLogo())) {
-                logos.put(TvContract.buildChannelLogoUri(uri), channel.getChannelLogo());
+                List<Uri> logoUris = logos.get(channel.getChannelLogo());
+                if (logoUris == null) {
+                    logoUris = new ArrayList<>();
+                    logos.put(channel.getChannelLogo(), logoUris);
+                }
+                logoUris.add(TvContract.buildChannelLogoUri(uri));
             }
         }
         if (!logos.isEmpty()) {
-            new InsertLogosTask(context).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, logos);
+            scope.launch(new InsertLogosTask(context, logos));
         }
 
         // Deletes channels which don't exist in the new feed.
@@ -251,6 +301,63 @@ public class TifChannelUtils {
         }*/
     }
 
+    /**
+     * Replaces the programs of a channel within a time window: the programs overlapping
+     * [{@code startTimeMs}, {@code endTimeMs}) are deleted, then {@code programs} are inserted
+     * with {@link ContentResolver#bulkInsert} in chunks of {@link #PROGRAM_INSERT_CHUNK_SIZE}.
+     *
+     * @param context The application's context.
+     * @param channelId The {@link Channels#_ID} of the channel.
+     * @param startTimeMs Start of the window, in milliseconds since the epoch.
+     * @param endTimeMs End of the window, in milliseconds since the epoch.
+     * @param programs The new programs of the window, sorted by start time.
+     * @return The number of programs inserted.
+     * @hide
+     */
+    public static int updatePrograms(Context context, long channelId, long startTimeMs,
+            long endTimeMs, List<TifProgramEntity> programs) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        ContentResolver resolver = context.getContentResolver();
+        // Not buildProgramsUriForChannel(): TvProvider matches that range inclusively, which
+        // would delete the programs just before and after the window without replacing them.
+        String selection = TvContract.Programs.COLUMN_CHANNEL_ID + " = ? AND "
+                + TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS + " < ? AND "
+                + TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS + " > ?";
+        int deleted = resolver.delete(TvContract.Programs.CONTENT_URI, selection,
+                new String[] {String.valueOf(channelId), String.valueOf(endTimeMs),
+                        String.valueOf(startTimeMs)});
+        int inserted = 0;
+        // ContentValues only hold boxed values. The channel ID is boxed once, and a program's
+        // start reuses the previous program's end when they are the same, which is the norm.
+        Long boxedChannelId = channelId;
+        Long previousEnd = null;
+        ContentValues[] chunk = new ContentValues[Math.min(programs.size(),
+                PROGRAM_INSERT_CHUNK_SIZE)];
+        int chunkSize = 0;
+        for (TifProgramEntity program : programs) {
+            Long start = previousEnd != null
+                    && previousEnd == program.getStartTimeUtcMillis()
+                    ? previousEnd : Long.valueOf(program.getStartTimeUtcMillis());
+            Long end = program.getEndTimeUtcMillis();
+            chunk[chunkSize++] = program.toContentValues(boxedChannelId, start, end);
+            previousEnd = end;
+            if (chunkSize == chunk.length) {
+                inserted += resolver.bulkInsert(TvContract.Programs.CONTENT_URI, chunk);
+                chunkSize = 0;
+            }
+        }
+        if (chunkSize > 0) {
+            inserted += resolver.bulkInsert(TvContract.Programs.CONTENT_URI,
+                    Arrays.copyOf(chunk, chunkSize));
+        }
+        long elapsedMs = Math.max(1,
+                (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000000);
+        Log.i(TAG, "Channel " + channelId + ": replaced " + deleted + " programs with "
+                + inserted + " in " + elapsedMs + "ms, " + (inserted * 1000L / elapsedMs)
+                + " rows/s");
+        return inserted;
+    }
+
     /**
      * Builds a map of available channels.
      *
@@ -322,17 +429,36 @@ public class TifChannelUtils {
      * @return List of channels.
      */
     public static List<TifChannelEntity> getChannels(ContentResolver resolver) {
+        return getChannels(resolver, null);
+    }
+
+    /**
+     * Returns the current list of channels your app provides.
+     *
+     * @param resolver Application's ContentResolver.
+     * @param signal Signal to cancel the query with, or {@code null}.
+     * @return List of channels.
+     * @throws android.os.OperationCanceledException If the query was cancelled.
+     */
+    public static List<TifChannelEntity> getChannels(ContentResolver resolver,
+            CancellationSignal signal) {
         List<TifChannelEntity> channels = new ArrayList<>();
         // TvProvider returns programs in chronological order by default.
         Cursor cursor = null;
         try {
-            cursor = resolver.query(Channels.CONTENT_URI, TifChannelEntity.PROJECTION, null, null, null);
+            cursor = resolver.query(Channels.CONTENT_URI, TifChannelEntity.PROJECTION, null, null,
+                    null, signal);
             if (cursor == null || cursor.getCount() == 0) {
                 return channels;
             }
             while (cursor.moveToNext()) {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
                 channels.add(TifChannelEntity.fromCursor(cursor));
             }
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
             Log.w(TAG, "Unable to get channels", e);
         } finally {
@@ -478,18 +604,144 @@ public class TifChannelUtils {
     }*/
 
 
-    private static void insertUrl(Context context, Uri contentUri, URL sourceUrl) {
-        if (DEBUG) {
-            Log.d(TAG, "Inserting " + sourceUrl + " to " + contentUri);
+    /**
+     * Writes the logo at {@code sourceUrl} to every channel in {@code contentUris}, fetching it
+     * at most once. Channels whose logo was last written from the same URL with the same content
+     * are left untouched, and nothing is downloaded when the server reports the logo unchanged.
+     */
+    private static void insertUrl(Context context, LogoLedger ledger, LogoEncoder encoder,
+            String sourceUrl, List<Uri> contentUris, CancellationSignal signal) {
+        Uri sourceUri = Uri.parse(sourceUrl);
+        if (ContentResolver.SCHEME_FILE.equals(sourceUri.getScheme())
+                || ContentResolver.SCHEME_CONTENT.equals(sourceUri.getScheme())) {
+            insertLocalLogo(context, ledger, encoder, sourceUri, contentUris, signal);
+            return;
+        }
+
+        // Validators can only be sent when every target already holds the same logo, otherwise
+        // a 304 would leave some of them without an image.
+        LogoLedger.Entry validators = null;
+        for (Uri contentUri : contentUris) {
+            LogoLedger.Entry entry = ledger.get(contentUri);
+            if (entry == null || !sourceUrl.equals(entry.getUrl())
+                    || (validators != null
+                            && !TextUtils.equals(validators.getHash(), entry.getHash()))) {
+                validators = null;
+                break;
+            }
+            validators = entry;
         }
-        InputStream is = null;
-        OutputStream os = null;
+
+        LogoResponse response;
         try {
-            is = sourceUrl.openStream();
-            os = context.getContentResolver().openOutputStream(contentUri);
-            copy(is, os);
+            response = fetchLogo(new URL(sourceUrl), validators, signal);
         } catch (IOException ioe) {
-            Log.e(TAG, "Failed to write " + sourceUrl + "  to " + contentUri, ioe);
+            signal.throwIfCanceled();
+            Log.e(TAG, "Failed to load " + sourceUrl, ioe);
+            return;
+        }
+        if (response.mNotModified) {
+            if (DEBUG) {
+                Log.d(TAG, "Logo " + sourceUrl + " not modified, skipping "
+                        + contentUris.size() + " channels");
+            }
+            return;
+        }
+
+        insertData(context, ledger, encoder, sourceUrl, response.mData, response.mETag,
+                response.mLastModified, contentUris, signal);
+    }
+
+    /**
+     * Writes {@code data} to every channel in {@code contentUris} that doesn't hold it yet.
+     */
+    private static void insertData(Context context, LogoLedger ledger, LogoEncoder encoder,
+            String sourceUrl, byte[] data, String eTag, String lastModified, List<Uri> contentUris,
+            CancellationSignal signal) {
+        // The ledger remembers the source bytes, the provider gets the shrunken ones.
+        String hash = hash(data);
+        byte[] logo = null;
+        for (Uri contentUri : contentUris) {
+            signal.throwIfCanceled();
+            if (isUnchanged(ledger.get(contentUri), sourceUrl, hash)) {
+                continue;
+            }
+            if (DEBUG) {
+                Log.d(TAG, "Inserting " + sourceUrl + " to " + contentUri);
+            }
+            if (logo == null) {
+                logo = encoder.encode(data);
+                if (DEBUG) {
+                    Log.d(TAG, "Encoded " + sourceUrl + " from " + data.length
+                            + " to " + logo.length + " bytes");
+                }
+            }
+            if (writeLogo(context, contentUri, logo)) {
+                ledger.put(contentUri, new LogoLedger.Entry(sourceUrl, eTag, lastModified, hash));
+            }
+        }
+    }
+
+    /**
+     * Copies a logo from a local file or another app's provider. Logos that are already small
+     * enough are transferred file descriptor to file descriptor without passing through the
+     * Java heap; only oversized ones are read in to be re-encoded.
+     */
+    private static void insertLocalLogo(Context context, LogoLedger ledger, LogoEncoder encoder,
+            Uri sourceUri, List<Uri> contentUris, CancellationSignal signal) {
+        String sourceUrl = sourceUri.toString();
+        ContentResolver resolver = context.getContentResolver();
+        FileInputStream is = null;
+        try {
+            ParcelFileDescriptor source = resolver.openFileDescriptor(sourceUri, "r", signal);
+            if (source == null) {
+                Log.e(TAG, "Failed to open " + sourceUrl);
+                return;
+            }
+            is = new ParcelFileDescriptor.AutoCloseInputStream(source);
+            StructStat stat = Os.fstat(source.getFileDescriptor());
+            if (!OsConstants.S_ISREG(stat.st_mode)) {
+                // A pipe can't be transferred from a position or read twice, buffer it.
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                copy(is, os, signal);
+                insertData(context, ledger, encoder, sourceUrl, os.toByteArray(), null, null,
+                        contentUris, signal);
+                return;
+            }
+
+            // Size and modification time identify a local file well enough, and unlike a
+            // content hash they don't require reading it.
+            String hash = "stat:" + stat.st_size + ":" + stat.st_mtime;
+            FileChannel sourceChannel = is.getChannel();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(source.getFileDescriptor(), null, options);
+            byte[] logo = null;
+            for (Uri contentUri : contentUris) {
+                signal.throwIfCanceled();
+                if (isUnchanged(ledger.get(contentUri), sourceUrl, hash)) {
+                    continue;
+                }
+                if (DEBUG) {
+                    Log.d(TAG, "Inserting " + sourceUrl + " to " + contentUri);
+                }
+                boolean written;
+                if (encoder.needsEncoding(options.outWidth, options.outHeight)) {
+                    if (logo == null) {
+                        logo = encoder.encode(readFully(sourceChannel, stat.st_size));
+                    }
+                    written = writeLogo(context, contentUri, logo);
+                } else {
+                    written = transferLogo(context, contentUri, sourceChannel, stat.st_size,
+                            signal);
+                }
+                if (written) {
+                    ledger.put(contentUri, new LogoLedger.Entry(sourceUrl, null, null, hash));
+                }
+            }
+        } catch (IOException | ErrnoException e) {
+            signal.throwIfCanceled();
+            Log.e(TAG, "Failed to load " + sourceUrl, e);
         } finally {
             if (is != null) {
                 try {
@@ -498,6 +750,38 @@ public class TifChannelUtils {
                     // Ignore exception.
                 }
             }
+        }
+    }
+
+    private static boolean transferLogo(Context context, Uri contentUri, FileChannel source,
+            long size, CancellationSignal signal) {
+        FileOutputStream os = null;
+        try {
+            ParcelFileDescriptor target =
+                    context.getContentResolver().openFileDescriptor(contentUri, "w", signal);
+            if (target == null) {
+                Log.e(TAG, "Failed to open logo " + contentUri);
+                return false;
+            }
+            os = new ParcelFileDescriptor.AutoCloseOutputStream(target);
+            FileChannel targetChannel = os.getChannel();
+            long position = 0;
+            while (position < size) {
+                signal.throwIfCanceled();
+                long transferred = source.transferTo(position, size - position, targetChannel);
+                if (transferred <= 0) {
+                    // The file shrank since it was stat'ed, don't keep a truncated logo.
+                    Log.e(TAG, "Logo source ended after " + position + " of " + size
+                            + " bytes for " + contentUri);
+                    return false;
+                }
+                position += transferred;
+            }
+            return true;
+        } catch (IOException ioe) {
+            Log.e(TAG, "Failed to write logo to " + contentUri, ioe);
+            return false;
+        } finally {
             if (os != null) {
                 try {
                     os.close();
@@ -508,10 +792,115 @@ public class TifChannelUtils {
         }
     }
 
-    private static void copy(InputStream is, OutputStream os) throws IOException {
+    private static byte[] readFully(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    private static boolean isUnchanged(LogoLedger.Entry entry, String sourceUrl, String hash) {
+        return entry != null && sourceUrl.equals(entry.getUrl()) && hash.equals(entry.getHash());
+    }
+
+    private static LogoResponse fetchLogo(URL sourceUrl, LogoLedger.Entry validators,
+            CancellationSignal signal) throws IOException {
+        LogoResponse response = new LogoResponse();
+        final URLConnection connection = sourceUrl.openConnection();
+        InputStream is = null;
+        try {
+            if (connection instanceof HttpURLConnection) {
+                final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+                // Dropping the connection unblocks a read stuck on a slow server.
+                signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                    @Override
+                    public void onCancel() {
+                        httpConnection.disconnect();
+                    }
+                });
+                if (validators != null) {
+                    if (!TextUtils.isEmpty(validators.getETag())) {
+                        httpConnection.setRequestProperty("If-None-Match", validators.getETag());
+                    }
+                    if (!TextUtils.isEmpty(validators.getLastModified())) {
+                        httpConnection.setRequestProperty("If-Modified-Since",
+                                validators.getLastModified());
+                    }
+                }
+                if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    response.mNotModified = true;
+                    return response;
+                }
+            }
+            response.mETag = connection.getHeaderField("ETag");
+            response.mLastModified = connection.getHeaderField("Last-Modified");
+            is = connection.getInputStream();
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            copy(is, os, signal);
+            response.mData = os.toByteArray();
+            return response;
+        } finally {
+            signal.setOnCancelListener(null);
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // Ignore exception.
+                }
+            }
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+    }
+
+    private static boolean writeLogo(Context context, Uri contentUri, byte[] data) {
+        OutputStream os = null;
+        try {
+            os = context.getContentResolver().openOutputStream(contentUri);
+            os.write(data);
+            return true;
+        } catch (IOException ioe) {
+            Log.e(TAG, "Failed to write logo to " + contentUri, ioe);
+            return false;
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException e) {
+                    // Ignore exception.
+                }
+            }
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available; fall back to something that never matches twice.
+            return String.valueOf(System.nanoTime());
+        }
+    }
+
+    private static void copy(InputStream is, OutputStream os, CancellationSignal signal)
+            throws IOException {
         byte[] buffer = new byte[1024];
         int len;
         while ((len = is.read(buffer)) != -1) {
+            signal.throwIfCanceled();
             os.write(buffer, 0, len);
         }
     }
@@ -524,15 +913,7 @@ public class TifChannelUtils {
      * @hide
      */
     public static TvContentRating[] stringToContentRatings(String commaSeparatedRatings) {
-        if (TextUtils.isEmpty(commaSeparatedRatings)) {
-            return null;
-        }
-        String[] ratings = commaSeparatedRatings.split("\\s*,\\s*");
-        TvContentRating[] contentRatings = new TvContentRating[ratings.length];
-        for (int i = 0; i < contentRatings.length; ++i) {
-            contentRatings[i] = TvContentRating.unflattenFromString(ratings[i]);
-        }
-        return contentRatings;
+        return ContentRatingCodec.getInstance().decode(commaSeparatedRatings);
     }
 
     /**
@@ -543,40 +924,68 @@ public class TifChannelUtils {
      * @hide
      */
     public static String contentRatingsToString(TvContentRating[] contentRatings) {
-        if (contentRatings == null || contentRatings.length == 0) {
+        return ContentRatingCodec.getInstance().encode(contentRatings);
+    }
+
+    /**
+     * Reads the rating of the program on a channel at a given time.
+     *
+     * @param channelId The {@link Channels#_ID} of the channel.
+     * @param timeMs The time, in milliseconds since the epoch.
+     * @return The comma-separated ratings of the program, or {@code null} if it isn't rated or
+     * there is no program at that time.
+     */
+    public static String getProgramRating(ContentResolver resolver, long channelId, long timeMs,
+            CancellationSignal signal) {
+        // A program ending right at timeMs is already over.
+        String selection = TvContract.Programs.COLUMN_CHANNEL_ID + " = ? AND "
+                + TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS + " <= ? AND "
+                + TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS + " > ?";
+        String time = String.valueOf(timeMs);
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(TvContract.Programs.CONTENT_URI,
+                    new String[] {TvContract.Programs.COLUMN_CONTENT_RATING}, selection,
+                    new String[] {String.valueOf(channelId), time, time}, null, signal);
+            if (cursor != null && cursor.moveToNext()) {
+                return cursor.getString(0);
+            }
             return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
-        final String DELIMITER = ",";
-        StringBuilder ratings = new StringBuilder(contentRatings[0].flattenToString());
-        for (int i = 1; i < contentRatings.length; ++i) {
-            ratings.append(DELIMITER);
-            ratings.append(contentRatings[i].flattenToString());
-        }
-        return ratings.toString();
     }
 
     private TifChannelUtils() {
     }
 
-    private static class InsertLogosTask extends AsyncTask<Map<Uri, String>, Void, Void> {
+    private static class LogoResponse {
+        private boolean mNotModified;
+        private byte[] mData;
+        private String mETag;
+        private String mLastModified;
+    }
+
+    private static class InsertLogosTask implements TaskScope.Task {
         private final Context mContext;
+        private final Map<String, List<Uri>> mLogos;
 
-        InsertLogosTask(Context context) {
-            mContext = context;
+        InsertLogosTask(Context context, Map<String, List<Uri>> logos) {
+            mContext = context.getApplicationContext();
+            mLogos = logos;
         }
 
         @Override
-        public Void doInBackground(Map<Uri, String>... logosList) {
-            for (Map<Uri, String> logos : logosList) {
-                for (Uri uri : logos.keySet()) {
-                    try {
-                        insertUrl(mContext, uri, new URL(logos.get(uri)));
-                    } catch (MalformedURLException e) {
-                        Log.e(TAG, "Can't load " + logos.get(uri), e);
-                    }
-                }
+        public void run(CancellationSignal signal) {
+            LogoLedger ledger = LogoLedger.getInstance(mContext);
+            LogoEncoder encoder = new LogoEncoder(
+                    mContext.getResources().getInteger(R.integer.max_channel_logo_size));
+            for (Map.Entry<String, List<Uri>> logo : mLogos.entrySet()) {
+                signal.throwIfCanceled();
+                insertUrl(mContext, ledger, encoder, logo.getKey(), logo.getValue(), signal);
             }
-            return null;
         }
     }
 }
@@ -0,0 +1,208 @@
+package com.android.livechannel.util;
+
+import android.media.tv.TvInputManager;
+import android.media.tv.TvTrackInfo;
+import android.media.tv.TvView;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.SparseIntArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Measures how long a {@link TvView#tune} takes until video, and audio, show up.
+ *
+ * <p>Set as the callback of the {@link TvView} and told about each tune through {@link #onTune}.
+ * Latencies are kept in per-input histograms, along with why video was reported unavailable, and
+ * can be printed with {@link #dump}. All methods must be called on the main thread.
+ */
+public class TuneLatencyTracker extends TvView.TvInputCallback {
+    /** Upper bounds of the histogram buckets, in milliseconds. The last bucket is open. */
+    private static final long[] BUCKET_BOUNDS_MS =
+            {100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 10000};
+
+    private final HashMap<String, InputStats> mStats = new HashMap<>();
+    private String mPendingInputId;
+    private Uri mPendingChannelUri;
+    private long mTuneTime;
+    private boolean mVideoPending;
+    private boolean mAudioPending;
+
+    /**
+     * Starts timing a tune, right before {@link TvView#tune} is called. A tune still waiting for
+     * video is counted as abandoned.
+     */
+    public void onTune(String inputId, Uri channelUri) {
+        if (mVideoPending) {
+            getStats(mPendingInputId).mAbandoned++;
+        }
+        mPendingInputId = inputId;
+        mPendingChannelUri = channelUri;
+        mTuneTime = SystemClock.elapsedRealtime();
+        mVideoPending = true;
+        mAudioPending = true;
+        getStats(inputId).mTunes++;
+    }
+
+    @Override
+    public void onVideoAvailable(String inputId) {
+        if (mVideoPending && TextUtils.equals(inputId, mPendingInputId)) {
+            mVideoPending = false;
+            long latency = SystemClock.elapsedRealtime() - mTuneTime;
+            getStats(inputId).mVideo.add(latency);
+            Util.LOG("tune " + mPendingChannelUri + " video after " + latency + "ms");
+        }
+    }
+
+    @Override
+    public void onVideoUnavailable(String inputId, int reason) {
+        SparseIntArray reasons = getStats(inputId).mUnavailableReasons;
+        reasons.put(reason, reasons.get(reason) + 1);
+        if (reason == TvInputManager.VIDEO_UNAVAILABLE_REASON_AUDIO_ONLY) {
+            // No video is coming, the tune is done once audio plays.
+            onAudioAvailable(inputId);
+        }
+    }
+
+    @Override
+    public void onTrackSelected(String inputId, int type, String trackId) {
+        if (type == TvTrackInfo.TYPE_AUDIO && trackId != null) {
+            onAudioAvailable(inputId);
+        }
+    }
+
+    @Override
+    public void onConnectionFailed(String inputId) {
+        getStats(inputId).mFailed++;
+        if (TextUtils.equals(inputId, mPendingInputId)) {
+            mVideoPending = false;
+            mAudioPending = false;
+        }
+    }
+
+    @Override
+    public void onDisconnected(String inputId) {
+        onConnectionFailed(inputId);
+    }
+
+    private void onAudioAvailable(String inputId) {
+        if (mAudioPending && TextUtils.equals(inputId, mPendingInputId)) {
+            mAudioPending = false;
+            getStats(inputId).mAudio.add(SystemClock.elapsedRealtime() - mTuneTime);
+        }
+    }
+
+    private InputStats getStats(String inputId) {
+        InputStats stats = mStats.get(inputId);
+        if (stats == null) {
+            stats = new InputStats();
+            mStats.put(inputId, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Prints the histograms of every input tuned so far.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Tune latency:");
+        List<String> inputIds = new ArrayList<>(mStats.keySet());
+        Collections.sort(inputIds);
+        for (String inputId : inputIds) {
+            InputStats stats = mStats.get(inputId);
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(inputId);
+            writer.print(": tunes=");
+            writer.print(stats.mTunes);
+            writer.print(" abandoned=");
+            writer.print(stats.mAbandoned);
+            writer.print(" failed=");
+            writer.println(stats.mFailed);
+            stats.mVideo.dump(prefix + "    video ", writer);
+            stats.mAudio.dump(prefix + "    audio ", writer);
+            writer.print(prefix);
+            writer.print("    unavailable");
+            for (int i = 0; i < stats.mUnavailableReasons.size(); ++i) {
+                writer.print(' ');
+                writer.print(reasonToString(stats.mUnavailableReasons.keyAt(i)));
+                writer.print('=');
+                writer.print(stats.mUnavailableReasons.valueAt(i));
+            }
+            writer.println();
+        }
+    }
+
+    private static String reasonToString(int reason) {
+        switch (reason) {
+            case TvInputManager.VIDEO_UNAVAILABLE_REASON_TUNING:
+                return "tuning";
+            case TvInputManager.VIDEO_UNAVAILABLE_REASON_WEAK_SIGNAL:
+                return "weak_signal";
+            case TvInputManager.VIDEO_UNAVAILABLE_REASON_BUFFERING:
+                return "buffering";
+            case TvInputManager.VIDEO_UNAVAILABLE_REASON_AUDIO_ONLY:
+                return "audio_only";
+            case TvInputManager.VIDEO_UNAVAILABLE_REASON_UNKNOWN:
+                return "unknown";
+            default:
+                return Integer.toString(reason);
+        }
+    }
+
+    private static class InputStats {
+        final Histogram mVideo = new Histogram();
+        final Histogram mAudio = new Histogram();
+        final SparseIntArray mUnavailableReasons = new SparseIntArray();
+        int mTunes;
+        int mAbandoned;
+        int mFailed;
+    }
+
+    private static class Histogram {
+        final int[] mCounts = new int[BUCKET_BOUNDS_MS.length + 1];
+        int mCount;
+        long mSum;
+        long mMax;
+
+        void add(long latency) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MS.length && latency > BUCKET_BOUNDS_MS[bucket]) {
+                ++bucket;
+            }
+            mCounts[bucket]++;
+            mCount++;
+            mSum += latency;
+            mMax = Math.max(mMax, latency);
+        }
+
+        void dump(String prefix, PrintWriter writer) {
+            writer.print(prefix);
+            writer.print("n=");
+            writer.print(mCount);
+            if (mCount > 0) {
+                writer.print(" avg=");
+                writer.print(mSum / mCount);
+                writer.print("ms max=");
+                writer.print(mMax);
+                writer.print("ms");
+            }
+            for (int i = 0; i < mCounts.length; ++i) {
+                if (mCounts[i] == 0) {
+                    continue;
+                }
+                writer.print(i < BUCKET_BOUNDS_MS.length ? " <=" + BUCKET_BOUNDS_MS[i] : " >"
+                        + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]);
+                writer.print(':');
+                writer.print(mCounts[i]);
+            }
+            writer.println();
+        }
+    }
+}
@@ -17,14 +17,19 @@ package com.android.livechannel.view;
 
 import android.app.FragmentManager;
 import android.app.FragmentTransaction;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.tv.TvContentRating;
 import android.media.tv.TvContract;
 import android.media.tv.TvInputInfo;
 import android.media.tv.TvInputManager;
 import android.media.tv.TvView;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 
@@ -34,14 +39,27 @@ import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
+import android.widget.Toast;
 
 import com.android.livechannel.R;
 import com.android.livechannel.adapter.ChannelAdapter;
 import com.android.livechannel.adapter.InputListAdapter;
 import com.android.livechannel.bean.TifChannelEntity;
+import com.android.livechannel.bean.TifProgramEntity;
+import com.android.livechannel.util.ChannelHistory;
+import com.android.livechannel.util.ChannelLineup;
 import com.android.livechannel.util.CommonUtils;
+import com.android.livechannel.util.ContentRatingCodec;
+import com.android.livechannel.util.LastChannelStore;
+import com.android.livechannel.util.NowNextScheduler;
+import com.android.livechannel.util.ParentalControlEngine;
+import com.android.livechannel.util.ProgramPruneService;
+import com.android.livechannel.util.TaskScope;
 import com.android.livechannel.util.TifChannelUtils;
+import com.android.livechannel.util.TuneLatencyTracker;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -50,55 +68,347 @@ import java.util.List;
 /*
  * MainActivity class that loads {@link MainFragment}.
  */
-public class MainActivity extends AppCompatActivity{
+public class MainActivity extends AppCompatActivity implements ChannelLineup.Listener
+        ,ZappingController.Listener{
+    private static final String OVERLAY_TAG = "overlay";
+    private static final long NO_CHANNEL = -1;
 
     private TvView mTvView;
     private FragmentManager mFragmentManager;
     private MainFragment mMainFragment;
+    private TvInputManager mTvInputManager;
+    private final ParentalControlEngine mParentalControlEngine = new ParentalControlEngine();
+    private TaskScope mTaskScope;
+    /** Bumped by every tune, so only the latest pending rating check tunes. */
+    private int mTuneGeneration;
+    private final ZappingController mZappingController = new ZappingController(this);
+    private final TuneLatencyTracker mTuneLatencyTracker = new TuneLatencyTracker();
+    private ChannelLineup mChannelLineup;
+    private LastChannelStore mLastChannelStore;
+    private ChannelHistory mChannelHistory;
+    private NowNextScheduler mNowNextScheduler;
+    private long mCurrentChannelId = NO_CHANNEL;
+    /** The saved channel, when it may be locked and waits for the lineup to be checked. */
+    private long mPendingChannelId = NO_CHANNEL;
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         mTvView = findViewById(R.id.tvView);
+        mTvView.setCallback(mTuneLatencyTracker);
+        mLastChannelStore = new LastChannelStore(this);
+        mChannelHistory = new ChannelHistory(this);
+        mTvInputManager = (TvInputManager) getSystemService(Context.TV_INPUT_SERVICE);
+        mTaskScope = TaskScope.forActivity(this);
+        // Tuning first, the input can then start up while everything else loads.
+        boolean tuned = tuneLastChannel();
+        initParentalControls();
+        // Follows the program on the tuned channel, whose rating can block it.
+        mNowNextScheduler = new NowNextScheduler(this, mTaskScope,
+                new NowNextScheduler.Listener() {
+                    @Override
+                    public void onCurrentProgramChanged(long channelId) {
+                        TifProgramEntity program = mNowNextScheduler.getCurrentProgram(channelId);
+                        mParentalControlEngine.setCurrentProgramRating(channelId,
+                                program != null ? program.getContentRating() : null);
+                        if(channelId == mCurrentChannelId){
+                            checkCurrentChannel();
+                        }
+                    }
+                });
+        if(mCurrentChannelId != NO_CHANNEL){
+            mNowNextScheduler.setVisibleChannels(new long[] {mCurrentChannelId});
+        }
         //init();
-        setDefaultFragment();
+        initOverlay(tuned);
+        mChannelLineup = ChannelLineup.getInstance(this);
+        mChannelLineup.addListener(this);
+        ProgramPruneService.schedule(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        unregisterReceiver(mParentalControlsReceiver);
+        mNowNextScheduler.pause();
+        mChannelLineup.removeListener(this);
+        super.onDestroy();
     }
 
-    private void setDefaultFragment(){
+    private void initParentalControls(){
+        mParentalControlEngine.setRatingPolicy(mRatingPolicy);
+        mParentalControlEngine.setParentalControlsEnabled(
+                mTvInputManager.isParentalControlsEnabled());
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(TvInputManager.ACTION_BLOCKED_RATINGS_CHANGED);
+        filter.addAction(TvInputManager.ACTION_PARENTAL_CONTROLS_ENABLED_CHANGED);
+        registerReceiver(mParentalControlsReceiver, filter);
+    }
+
+    public ParentalControlEngine getParentalControlEngine() {
+        return mParentalControlEngine;
+    }
 
+    @Override
+    public void onLineupChanged(ChannelLineup lineup) {
+        mParentalControlEngine.setLineup(lineup.getChannels());
+        mZappingController.setLineup(lineup.getChannels());
+        mChannelHistory.setLineup(lineup.getChannels());
+        if(mPendingChannelId != NO_CHANNEL){
+            // Now the engine knows whether the saved channel is locked.
+            int index = mParentalControlEngine.indexOf(mPendingChannelId);
+            mPendingChannelId = NO_CHANNEL;
+            if(index >= 0 && !mParentalControlEngine.isBlocked(index)){
+                playChannel(lineup.getChannels().get(index));
+            }
+            return;
+        }
+        // The channel tuned at startup is only checked now that the lineup is known.
+        if(checkCurrentChannel()){
+            TifChannelEntity channel = lineup.getChannels().get(
+                    mParentalControlEngine.indexOf(mCurrentChannelId));
+            mZappingController.setCurrentChannel(channel);
+            mChannelHistory.record(channel);
+            // Keeps the saved lock state in line with the provider.
+            mLastChannelStore.write(channel.getId(), channel.getInputId(),
+                    channel.getLocked() != 0);
+        }
+    }
+
+    /**
+     * Stops the tuned channel if it left the lineup or got blocked.
+     *
+     * @return Whether a channel is still playing.
+     */
+    private boolean checkCurrentChannel(){
+        if(mCurrentChannelId == NO_CHANNEL){
+            return false;
+        }
+        int index = mParentalControlEngine.indexOf(mCurrentChannelId);
+        if(index < 0){
+            stopPlayback();
+            return false;
+        }
+        if(mParentalControlEngine.isBlocked(index)){
+            Toast.makeText(this, R.string.channel_blocked, Toast.LENGTH_SHORT).show();
+            stopPlayback();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onZap(TifChannelEntity channel) {
+        playChannel(channel);
+    }
+
+    /**
+     * Adds the browse overlay, once. It then stays alive, lists, scroll position and focus
+     * included, and is only shown and hidden over the video.
+     */
+    private void initOverlay(boolean hidden){
         mFragmentManager = getFragmentManager();
-        FragmentTransaction fragmentTransaction = mFragmentManager.beginTransaction();
+        mMainFragment = (MainFragment) mFragmentManager.findFragmentByTag(OVERLAY_TAG);
+        if(mMainFragment != null){
+            // Restored along with the activity.
+            return;
+        }
         mMainFragment = new MainFragment();
-        fragmentTransaction.replace(R.id.main_browse_fragment,mMainFragment);
+        FragmentTransaction fragmentTransaction = mFragmentManager.beginTransaction()
+                .add(R.id.main_browse_fragment,mMainFragment,OVERLAY_TAG);
+        if(hidden){
+            // Still loads its data, but stays out of the way of the channel tuned at startup.
+            fragmentTransaction.hide(mMainFragment);
+        }
         fragmentTransaction.commit();
     }
 
+    private void showOverlay(){
+        if(mMainFragment.isHidden()){
+            mFragmentManager.beginTransaction().show(mMainFragment).commit();
+        }
+    }
+
+    private void hideOverlay(){
+        if(!mMainFragment.isHidden()){
+            mFragmentManager.beginTransaction().hide(mMainFragment).commit();
+        }
+    }
+
     @Override
     public boolean dispatchKeyEvent(KeyEvent event) {
+        if(mZappingController.dispatchKeyEvent(event)){
+            return true;
+        }
+
+        if(event.getKeyCode() == KeyEvent.KEYCODE_LAST_CHANNEL){
+            TifChannelEntity previous = mChannelHistory.getPrevious();
+            if(event.getAction() == KeyEvent.ACTION_UP && previous != null){
+                playChannel(previous);
+            }
+            return true;
+        }
 
         if(event.getKeyCode() == KeyEvent.KEYCODE_INFO){
-            if(!mMainFragment.isVisible()){
-                setDefaultFragment();
-                return true;
+            if(event.getAction() == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0){
+                if(mMainFragment.isHidden()){
+                    showOverlay();
+                }else{
+                    hideOverlay();
+                }
             }
+            return true;
         }
         return super.dispatchKeyEvent(event);
 
 
     };
 
-    public void playChannel(TifChannelEntity tifChannelEntity){
-        FragmentTransaction fragmentTransaction = mFragmentManager.beginTransaction();
-        fragmentTransaction.remove(mMainFragment);
-        fragmentTransaction.commit();
+    public void playChannel(final TifChannelEntity tifChannelEntity){
+        ++mTuneGeneration;
+        mZappingController.setCurrentChannel(tifChannelEntity);
+        if(mParentalControlEngine.isBlocked(
+                mParentalControlEngine.indexOf(tifChannelEntity.getId()))){
+            Toast.makeText(this, R.string.channel_blocked, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if(!mParentalControlEngine.isParentalControlsEnabled()){
+            tuneChannel(tifChannelEntity);
+            return;
+        }
+        checkRatingThen(tifChannelEntity.getId(), new Runnable() {
+            @Override
+            public void run() {
+                tuneChannel(tifChannelEntity);
+            }
+        });
+    }
+
+    /**
+     * Looks up the rating of the program on {@code channelId} and runs {@code tune} unless it is
+     * blocked, so a rated channel is never shown, not even until its program is known. Dropped
+     * if another channel is tuned in the meantime.
+     */
+    private void checkRatingThen(final long channelId, final Runnable tune){
+        final int generation = mTuneGeneration;
+        final ContentResolver resolver = getContentResolver();
+        mTaskScope.launch(new TaskScope.Task() {
+            @Override
+            public void run(CancellationSignal signal) {
+                final String rating = TifChannelUtils.getProgramRating(resolver, channelId,
+                        System.currentTimeMillis(), signal);
+                mTaskScope.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation != mTuneGeneration){
+                            return;
+                        }
+                        mParentalControlEngine.setCurrentProgramRating(channelId, rating);
+                        ContentRatingCodec codec = ContentRatingCodec.getInstance();
+                        if(codec.isBlocked(codec.toMask(rating))){
+                            Toast.makeText(MainActivity.this, R.string.channel_blocked,
+                                    Toast.LENGTH_SHORT).show();
+                        }else{
+                            tune.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
+    private void tuneChannel(TifChannelEntity tifChannelEntity){
+        hideOverlay();
+        mChannelHistory.record(tifChannelEntity);
+        mCurrentChannelId = tifChannelEntity.getId();
+        mLastChannelStore.write(tifChannelEntity.getId(), tifChannelEntity.getInputId(),
+                tifChannelEntity.getLocked() != 0);
+        startPlayback(tifChannelEntity.getInputId(),tifChannelEntity.getChannelUri());
+        // Last, as a program already known to be blocked stops playback right away.
+        mNowNextScheduler.setVisibleChannels(new long[] {mCurrentChannelId});
+    }
+
+    /**
+     * Tunes the channel saved by {@link LastChannelStore}, if any. While parental controls are
+     * on, a channel that is, or may be, locked is left for {@link #onLineupChanged} to tune once
+     * the {@link ParentalControlEngine} cleared it, and an unlocked one is only tuned once the
+     * rating of its program is checked.
+     *
+     * @return Whether a channel was tuned right away.
+     */
+    private boolean tuneLastChannel(){
+        final LastChannelStore.Record record = mLastChannelStore.read();
+        if(record == null){
+            return false;
+        }
+        if(!mTvInputManager.isParentalControlsEnabled()){
+            mCurrentChannelId = record.mChannelId;
+            startPlayback(record.mInputId,TvContract.buildChannelUri(record.mChannelId));
+            return true;
+        }
+        if(record.mLockState != LastChannelStore.UNLOCKED){
+            mPendingChannelId = record.mChannelId;
+            return false;
+        }
+        // Runs after onCreate, once the rating policy is set.
+        checkRatingThen(record.mChannelId, new Runnable() {
+            @Override
+            public void run() {
+                hideOverlay();
+                mCurrentChannelId = record.mChannelId;
+                startPlayback(record.mInputId,TvContract.buildChannelUri(record.mChannelId));
+                mNowNextScheduler.setVisibleChannels(new long[] {mCurrentChannelId});
+            }
+        });
+        return false;
+    }
+
+    private void startPlayback(String inputId, Uri channelUri){
         mTvView.setVisibility(View.VISIBLE);
+        // Below the window, so the overlay can be drawn over the video.
         mTvView.setZOrderMediaOverlay(true);
-        mTvView.setZOrderOnTop(true);
-        mTvView.tune(tifChannelEntity.getInputId(),TvContract.buildChannelUri(tifChannelEntity.getId()));
+        mTuneLatencyTracker.onTune(inputId,channelUri);
+        mTvView.tune(inputId,channelUri);
+    }
+
+    private void stopPlayback(){
+        mCurrentChannelId = NO_CHANNEL;
+        mNowNextScheduler.setVisibleChannels(new long[0]);
+        mTvView.reset();
+        mTvView.setVisibility(View.INVISIBLE);
+        showOverlay();
+    }
 
+    /**
+     * Prints the tune latencies, see {@code adb shell dumpsys activity MainActivity}.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        mTuneLatencyTracker.dump(prefix, writer);
     }
 
+    private final BroadcastReceiver mParentalControlsReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (TvInputManager.ACTION_BLOCKED_RATINGS_CHANGED.equals(intent.getAction())) {
+                // Checks every rating seen so far against the new blocked ratings.
+                mParentalControlEngine.setRatingPolicy(mRatingPolicy);
+            } else {
+                mParentalControlEngine.setParentalControlsEnabled(
+                        mTvInputManager.isParentalControlsEnabled());
+            }
+            checkCurrentChannel();
+        }
+    };
+
+    private final ContentRatingCodec.RatingPolicy mRatingPolicy =
+            new ContentRatingCodec.RatingPolicy() {
+                @Override
+                public boolean isRatingBlocked(TvContentRating contentRating) {
+                    return mTvInputManager.isRatingBlocked(contentRating);
+                }
+            };
+
 
 
 
@@ -1,43 +1,56 @@
 package com.android.livechannel.view;
 
 import android.app.Fragment;
-import android.content.Context;
 import android.content.Intent;
 import android.media.tv.TvInputInfo;
-import android.media.tv.TvInputManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
 import com.android.livechannel.R;
 import com.android.livechannel.adapter.ChannelAdapter;
 import com.android.livechannel.adapter.InputListAdapter;
+import com.android.livechannel.adapter.RowInflater;
 import com.android.livechannel.bean.TifChannelEntity;
+import com.android.livechannel.bean.TifProgramEntity;
+import com.android.livechannel.bean.TvInputEntity;
+import com.android.livechannel.util.ChannelLineup;
 import com.android.livechannel.util.CommonUtils;
-import com.android.livechannel.util.TifChannelUtils;
-import com.android.livechannel.util.Util;
+import com.android.livechannel.util.InputRegistry;
+import com.android.livechannel.util.NowNextScheduler;
+import com.android.livechannel.util.TaskScope;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 public class MainFragment extends Fragment  implements InputListAdapter.InputClickListener
-        ,ChannelAdapter.ChannelClickListener{
+        ,InputListAdapter.InputFocusListener,ChannelAdapter.ChannelClickListener
+        ,ChannelLineup.Listener{
 
-    private TvInputManager mTvInputManager;
-    private Handler mHandler = new Handler(Looper.getMainLooper());
+    // Rows of 50dip in a list filling a 1080p screen, plus some slack for scrolling.
+    private static final int PRE_INFLATED_ROWS = 24;
+    private static final int MAX_RECYCLED_ROWS = 2 * PRE_INFLATED_ROWS;
+    private static final int ITEM_VIEW_CACHE_SIZE = 4;
 
-    private HashMap<String,TvInputInfo> mTvInputInfoHashMap = new HashMap<>();
+    private InputRegistry mInputRegistry;
     private InputListAdapter mInputListAdapter;
     private ChannelAdapter mChannelAdapter;
     private RecyclerView mInputRecyclerView;
     private RecyclerView mChannelRecyclerView;
-    private List<TifChannelEntity> mChannelEntities;
+    private ChannelLineup mChannelLineup;
+    /** The input whose channels are listed, {@code null} for all of them. */
+    private String mSelectedInputId;
+    private RowInflater mRowInflater;
+    private RecyclerView.RecycledViewPool mViewPool;
+    /** Inputs that arrived while the overlay was hidden, applied when it is shown again. */
+    private List<TvInputEntity> mPendingInputs;
+    private boolean mLineupChanged;
+    private View mLastFocusedView;
+    private NowNextScheduler mNowNextScheduler;
+    private long[] mVisibleChannelIds = new long[0];
 
     @Override
     public View onCreateView(LayoutInflater inflater,ViewGroup container, Bundle savedInstanceState) {
@@ -52,107 +65,171 @@ public class MainFragment extends Fragment  implements InputListAdapter.InputCli
     }
 
 
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        if(hidden){
+            mNowNextScheduler.pause();
+            return;
+        }
+        // Only what changed while hidden is refreshed, the rest is shown as it was left.
+        if(mPendingInputs != null){
+            mInputListAdapter.updateData(mPendingInputs);
+            mPendingInputs = null;
+        }
+        if(mLineupChanged){
+            mLineupChanged = false;
+            mChannelAdapter.updateData(mChannelLineup.getChannels(mSelectedInputId));
+        }
+        if(mLastFocusedView != null && mLastFocusedView.isAttachedToWindow()){
+            mLastFocusedView.requestFocus();
+        }
+        mNowNextScheduler.resume();
+    }
+
+    @Override
+    public void onDestroyView() {
+        getView().getViewTreeObserver().removeOnGlobalFocusChangeListener(mFocusChangeListener);
+        mChannelRecyclerView.getViewTreeObserver().removeOnGlobalLayoutListener(mLayoutListener);
+        // Detaching the adapter stops it following rewritten logos.
+        mChannelRecyclerView.setAdapter(null);
+        mLastFocusedView = null;
+        mNowNextScheduler.pause();
+        mInputRegistry.stop();
+        mChannelLineup.removeListener(this);
+        super.onDestroyView();
+    }
+
     private void init(){
-        mTvInputManager = (TvInputManager)getActivity().getSystemService(Context.TV_INPUT_SERVICE);
-        mTvInputManager.registerCallback(mTvInputCallback,mHandler);
+        mChannelLineup = ChannelLineup.getInstance(getContext());
+        mInputRegistry = new InputRegistry(getContext());
+
+        mNowNextScheduler = new NowNextScheduler(getContext(), TaskScope.forFragment(this),
+                new NowNextScheduler.Listener() {
+                    @Override
+                    public void onCurrentProgramChanged(long channelId) {
+                        // Keeps the blocked state of the channels on screen current.
+                        TifProgramEntity program = mNowNextScheduler.getCurrentProgram(channelId);
+                        ((MainActivity) getActivity()).getParentalControlEngine()
+                                .setCurrentProgramRating(channelId,
+                                        program != null ? program.getContentRating() : null);
+                        RecyclerView.ViewHolder holder =
+                                mChannelRecyclerView.findViewHolderForItemId(channelId);
+                        int position = holder != null
+                                ? holder.getAdapterPosition() : RecyclerView.NO_POSITION;
+                        if(position != RecyclerView.NO_POSITION){
+                            mChannelAdapter.notifyProgramChanged(position);
+                        }
+                    }
+                });
+        if(isHidden()){
+            mNowNextScheduler.pause();
+        }
 
+        mRowInflater = new RowInflater(getContext());
+        mViewPool = new RecyclerView.RecycledViewPool();
+        mViewPool.setMaxRecycledViews(RowInflater.VIEW_TYPE, MAX_RECYCLED_ROWS);
         initInputView();
         initChannelView();
 
-        generateInputList();
-        generateChannelList();
+        mInputRegistry.start(new InputRegistry.Listener() {
+            @Override
+            public void onInputsChanged(List<TvInputEntity> inputs) {
+                updateInputData(inputs);
+            }
+        });
+        mChannelLineup.addListener(this);
+        getView().getViewTreeObserver().addOnGlobalFocusChangeListener(mFocusChangeListener);
     }
 
     private void initInputView(){
         mInputRecyclerView = getView().findViewById(R.id.rv_input_list);
         mInputListAdapter = new InputListAdapter(getContext());
+        mInputListAdapter.setRowInflater(mRowInflater);
         mInputListAdapter.registerInputClickListener(this);
-        LinearLayoutManager linearLayoutManager = new LinearLayoutManager(getContext(),LinearLayoutManager.VERTICAL,false);
-        mInputRecyclerView.setLayoutManager(linearLayoutManager);
+        mInputListAdapter.registerInputFocusListener(this);
+        initRecyclerView(mInputRecyclerView);
         mInputRecyclerView.setAdapter(mInputListAdapter);
     }
 
     private void initChannelView(){
         mChannelRecyclerView = getView().findViewById(R.id.rv_channel_list);
         mChannelAdapter = new ChannelAdapter(getContext());
+        mChannelAdapter.setRowInflater(mRowInflater);
         mChannelAdapter.registerChannelClickListener(this);
-        LinearLayoutManager linearLayoutManager = new LinearLayoutManager(getContext(),LinearLayoutManager.VERTICAL,false);
-        mInputRecyclerView.setLayoutManager(linearLayoutManager);
+        mChannelAdapter.setNowNextScheduler(mNowNextScheduler);
+        initRecyclerView(mChannelRecyclerView);
         mChannelRecyclerView.setAdapter(mChannelAdapter);
+        mChannelRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                updateVisibleChannels();
+            }
+        });
+        mChannelRecyclerView.getViewTreeObserver().addOnGlobalLayoutListener(mLayoutListener);
+        // Both lists draw their rows from the shared pool, fill it while the data loads.
+        mRowInflater.preInflate(mChannelRecyclerView, PRE_INFLATED_ROWS, mChannelAdapter,
+                mViewPool);
     }
 
-
-    private void updateInputData(){
-
-        mInputListAdapter.updateData(getInputList());
-        mInputListAdapter.notifyDataSetChanged();
-    }
-
-    private void updateChannelData(){
-        mChannelAdapter.updateData(mChannelEntities);
-        mChannelAdapter.notifyDataSetChanged();
+    private void initRecyclerView(RecyclerView recyclerView){
+        LinearLayoutManager linearLayoutManager = new LinearLayoutManager(getContext(),LinearLayoutManager.VERTICAL,false);
+        recyclerView.setLayoutManager(linearLayoutManager);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(ITEM_VIEW_CACHE_SIZE);
+        recyclerView.setRecycledViewPool(mViewPool);
     }
 
 
-    private void generateInputList(){
-
-        List<TvInputInfo> tvInputInfoList = mTvInputManager.getTvInputList();
-
-        if(tvInputInfoList!=null) {
-            Util.LOG("tv input size:" + tvInputInfoList.size());
-            for(TvInputInfo tvInputInfo:tvInputInfoList){
-                Util.LOG("tv input info:" + tvInputInfo.loadLabel(getContext()));
-            }
-
+    /**
+     * Tells the scheduler which channels are on screen, if they changed.
+     */
+    private void updateVisibleChannels(){
+        LinearLayoutManager layoutManager =
+                (LinearLayoutManager) mChannelRecyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        int count = first == RecyclerView.NO_POSITION ? 0 : last - first + 1;
+        boolean changed = count != mVisibleChannelIds.length;
+        for(int i = 0; i < count && !changed; ++i){
+            changed = mChannelAdapter.getItemId(first + i) != mVisibleChannelIds[i];
         }
-        insertInputList(tvInputInfoList);
-        updateInputData();
-
-
-    }
-
-    private void generateChannelList(){
-        mChannelEntities = TifChannelUtils.getChannels(getActivity().getContentResolver());
-        if(mChannelEntities== null){
-            mChannelEntities = new ArrayList<>();
+        if(!changed){
+            return;
         }
-        updateChannelData();
-
-    }
-
-    private synchronized void insertInput(TvInputInfo tvInputInfo){
-        if(tvInputInfo!=null
-                &&tvInputInfo.getId()!=null){
-            mTvInputInfoHashMap.put(tvInputInfo.getId(),tvInputInfo);
+        long[] channelIds = new long[count];
+        for(int i = 0; i < count; ++i){
+            channelIds[i] = mChannelAdapter.getItemId(first + i);
         }
+        mVisibleChannelIds = channelIds;
+        mNowNextScheduler.setVisibleChannels(channelIds);
     }
-    private synchronized void insertInputList(List<TvInputInfo> tvInputInfos){
-        if(tvInputInfos!=null&&tvInputInfos.size()>0){
-            for(TvInputInfo tvInputInfo:tvInputInfos){
-                insertInput(tvInputInfo);
-            }
-        }
 
+    private void updateInputData(List<TvInputEntity> tvInputEntities){
+        if(isHidden()){
+            mPendingInputs = tvInputEntities;
+            return;
+        }
+        mInputListAdapter.updateData(tvInputEntities);
     }
 
-    private synchronized List<TvInputInfo> getInputList(){
-
-        List<TvInputInfo> tvInputInfoList = new ArrayList<>();
-        for(String key:mTvInputInfoHashMap.keySet()){
-            TvInputInfo tvInputInfo = mTvInputInfoHashMap.get(key);
-            if(tvInputInfo!=null){
-                tvInputInfoList.add(tvInputInfo);
-            }
+    @Override
+    public void onLineupChanged(ChannelLineup lineup) {
+        if(isHidden()){
+            mLineupChanged = true;
+            return;
         }
-        return tvInputInfoList;
-
+        mChannelAdapter.updateData(lineup.getChannels(mSelectedInputId));
     }
 
-    private synchronized void removeInput(TvInputInfo tvInputInfo){
-        if(tvInputInfo!=null
-                &&tvInputInfo.getId()!=null){
-            mTvInputInfoHashMap.remove(tvInputInfo.getId());
+    @Override
+    public void notifyInputFocused(String inputId) {
+        if(inputId.equals(mSelectedInputId)){
+            return;
         }
+        mSelectedInputId = inputId;
+        // The lineup already holds every input's channels, this is a plain swap.
+        mChannelAdapter.replaceData(mChannelLineup.getChannels(inputId));
     }
 
     @Override
@@ -171,35 +248,27 @@ public class MainFragment extends Fragment  implements InputListAdapter.InputCli
 
     }
 
-    private TvInputManager.TvInputCallback mTvInputCallback = new TvInputManager.TvInputCallback() {
-        @Override
-        public void onInputStateChanged(String inputId, int state) {
-            super.onInputStateChanged(inputId, state);
-            generateInputList();
-        }
-
-        @Override
-        public void onInputAdded(String inputId) {
-            super.onInputAdded(inputId);
-            generateInputList();
-        }
-
-        @Override
-        public void onInputRemoved(String inputId) {
-            super.onInputRemoved(inputId);
-            generateInputList();
-        }
-
-        @Override
-        public void onInputUpdated(String inputId) {
-            super.onInputUpdated(inputId);
-            generateInputList();
-        }
-
-        @Override
-        public void onTvInputInfoUpdated(TvInputInfo inputInfo) {
-            super.onTvInputInfoUpdated(inputInfo);
-            generateInputList();
-        }
-    };
+    /**
+     * Remembers the row that had focus, hiding the overlay takes the focus away from it.
+     */
+    private final ViewTreeObserver.OnGlobalFocusChangeListener mFocusChangeListener =
+            new ViewTreeObserver.OnGlobalFocusChangeListener() {
+                @Override
+                public void onGlobalFocusChanged(View oldFocus, View newFocus) {
+                    if(!isHidden() && newFocus != null && getView().findFocus() == newFocus){
+                        mLastFocusedView = newFocus;
+                    }
+                }
+            };
+
+    /**
+     * New data can put other channels on screen without any scrolling.
+     */
+    private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    updateVisibleChannels();
+                }
+            };
 }
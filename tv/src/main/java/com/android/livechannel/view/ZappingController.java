@@ -0,0 +1,210 @@
+package com.android.livechannel.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+import android.view.KeyEvent;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Channel up/down and channel number entry over the lineup of
+ * {@link com.android.livechannel.util.ChannelLineup}.
+ *
+ * <p>Keys only move a pending target, the channel is tuned when the key is released. Holding
+ * CHANNEL_UP thus skims through the lineup and only tunes where it stops. The neighbors of the
+ * current channel are resolved ahead of time, so a zap starts tuning right on key release.
+ * Must be used on the main thread.
+ */
+class ZappingController {
+    private static final int NO_INDEX = -1;
+    private static final long DIGIT_TIMEOUT_MS = 2000;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+    private final LongSparseArray<Integer> mIndices = new LongSparseArray<>();
+    private final HashMap<String, Integer> mNumberIndices = new HashMap<>();
+    private final StringBuilder mDigits = new StringBuilder();
+    private List<TifChannelEntity> mChannels = Collections.emptyList();
+    private int mMaxDigits;
+    private int mCurrentIndex = NO_INDEX;
+    private int mPendingIndex = NO_INDEX;
+
+    interface Listener {
+        /** Asks for {@code channel} to be tuned. */
+        void onZap(TifChannelEntity channel);
+    }
+
+    ZappingController(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Replaces the lineup zapped through. The current channel is kept if it is still part of it.
+     */
+    void setLineup(List<TifChannelEntity> channels) {
+        TifChannelEntity current = mCurrentIndex != NO_INDEX ? mChannels.get(mCurrentIndex) : null;
+        mChannels = channels;
+        mIndices.clear();
+        mNumberIndices.clear();
+        mMaxDigits = 0;
+        for (int i = 0; i < channels.size(); ++i) {
+            TifChannelEntity channel = channels.get(i);
+            mIndices.put(channel.getId(), i);
+            String digits = digitsOf(channel.getDisplayNumber());
+            if (!digits.isEmpty() && !mNumberIndices.containsKey(digits)) {
+                mNumberIndices.put(digits, i);
+                mMaxDigits = Math.max(mMaxDigits, digits.length());
+            }
+        }
+        mPendingIndex = NO_INDEX;
+        mCurrentIndex = NO_INDEX;
+        if (current != null) {
+            moveTo(indexOf(current.getId()));
+        }
+    }
+
+    /**
+     * Tells the controller which channel is being watched, for channels tuned by other means.
+     */
+    void setCurrentChannel(TifChannelEntity channel) {
+        moveTo(indexOf(channel.getId()));
+    }
+
+    /**
+     * @return Whether {@code event} was a zapping key and got consumed.
+     */
+    boolean dispatchKeyEvent(KeyEvent event) {
+        int keyCode = event.getKeyCode();
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_CHANNEL_UP:
+            case KeyEvent.KEYCODE_CHANNEL_DOWN:
+                if (event.getAction() == KeyEvent.ACTION_DOWN) {
+                    // Key repeats land here too, each one only moves the target.
+                    step(keyCode == KeyEvent.KEYCODE_CHANNEL_UP ? 1 : -1);
+                } else if (event.getAction() == KeyEvent.ACTION_UP && mPendingIndex != NO_INDEX) {
+                    zapTo(mPendingIndex);
+                }
+                return true;
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                if (mDigits.length() == 0) {
+                    return false;
+                }
+                if (event.getAction() == KeyEvent.ACTION_UP) {
+                    commitDigits();
+                }
+                return true;
+            default:
+                if (keyCode < KeyEvent.KEYCODE_0 || keyCode > KeyEvent.KEYCODE_9) {
+                    return false;
+                }
+                if (event.getAction() == KeyEvent.ACTION_DOWN && event.getRepeatCount() == 0) {
+                    appendDigit((char) ('0' + keyCode - KeyEvent.KEYCODE_0));
+                }
+                return true;
+        }
+    }
+
+    private void step(int direction) {
+        int size = mChannels.size();
+        if (size == 0) {
+            return;
+        }
+        clearDigits();
+        int from = mPendingIndex != NO_INDEX ? mPendingIndex : mCurrentIndex;
+        if (from == NO_INDEX) {
+            mPendingIndex = direction > 0 ? 0 : size - 1;
+        } else {
+            mPendingIndex = (from + direction + size) % size;
+        }
+    }
+
+    private void appendDigit(char digit) {
+        mPendingIndex = NO_INDEX;
+        mDigits.append(digit);
+        mHandler.removeCallbacks(mCommitDigitsRunnable);
+        if (mDigits.length() >= mMaxDigits) {
+            // No channel has a longer number, there is nothing left to wait for.
+            commitDigits();
+        } else {
+            mHandler.postDelayed(mCommitDigitsRunnable, DIGIT_TIMEOUT_MS);
+        }
+    }
+
+    private void commitDigits() {
+        Integer index = mNumberIndices.get(mDigits.toString());
+        clearDigits();
+        if (index != null) {
+            zapTo(index);
+        }
+    }
+
+    private void clearDigits() {
+        mHandler.removeCallbacks(mCommitDigitsRunnable);
+        mDigits.setLength(0);
+    }
+
+    private void zapTo(int index) {
+        mPendingIndex = NO_INDEX;
+        if (index == mCurrentIndex) {
+            return;
+        }
+        TifChannelEntity channel = mChannels.get(index);
+        // Moving on even if the channel can't be played, so the next zap doesn't get stuck here.
+        moveTo(index);
+        mListener.onZap(channel);
+    }
+
+    private void moveTo(int index) {
+        if (index == mCurrentIndex) {
+            return;
+        }
+        mCurrentIndex = index;
+        if (index == NO_INDEX) {
+            return;
+        }
+        // Resolved now, so the URIs are ready when the neighbors get zapped to.
+        int size = mChannels.size();
+        resolve(mChannels.get((index + 1) % size));
+        resolve(mChannels.get((index - 1 + size) % size));
+    }
+
+    private static void resolve(TifChannelEntity channel) {
+        channel.getChannelUri();
+        channel.getLogoUri();
+    }
+
+    private int indexOf(long channelId) {
+        Integer index = mIndices.get(channelId);
+        return index != null ? index : NO_INDEX;
+    }
+
+    /**
+     * @return The digits of a display number, which is what can be typed on a remote.
+     */
+    private static String digitsOf(String displayNumber) {
+        if (displayNumber == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(displayNumber.length());
+        for (int i = 0; i < displayNumber.length(); ++i) {
+            char c = displayNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    private final Runnable mCommitDigitsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            commitDigits();
+        }
+    };
+}
@@ -0,0 +1,76 @@
+package com.android.livechannel.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Times an operation on the JVM and reports ops/sec and bytes allocated per op.
+ *
+ * <p>The operation is first run for {@link #WARMUP_MS} so the JIT settles, then for
+ * {@link #MEASURE_MS}. Allocations are read from the HotSpot per-thread counter; on a JVM without
+ * it they are reported as unknown.
+ */
+final class Benchmark {
+    private static final long WARMUP_MS = 300;
+    private static final long MEASURE_MS = 1000;
+    private static final long NANOS_PER_MS = 1000000;
+
+    /** One run of the operation being measured. */
+    interface Op {
+        /**
+         * @return Anything derived from the work, so the JIT can't drop it.
+         */
+        Object run();
+    }
+
+    /** Kept so the results of {@link Op#run} are used. */
+    private static volatile Object sSink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Measures {@code op} and prints a line such as
+     * {@code fromCursor n=1000: 1234.5 ops/s, 456789 B/op}.
+     */
+    static void run(String name, int size, Op op) {
+        loop(op, WARMUP_MS);
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threadBean != null ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+        long ops = loop(op, MEASURE_MS);
+        long elapsed = System.nanoTime() - start;
+        String bytesPerOp = "?";
+        if (threadBean != null) {
+            long bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+            bytesPerOp = String.valueOf(bytes / ops);
+        }
+        System.out.println(String.format(Locale.US, "%s n=%d: %.1f ops/s, %s B/op", name, size,
+                ops * 1e9 / elapsed, bytesPerOp));
+    }
+
+    private static long loop(Op op, long durationMs) {
+        long end = System.nanoTime() + durationMs * NANOS_PER_MS;
+        long ops = 0;
+        do {
+            sSink = op.run();
+            ++ops;
+        } while (System.nanoTime() < end);
+        return ops;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!hotSpotBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        hotSpotBean.setThreadAllocatedMemoryEnabled(true);
+        return hotSpotBean;
+    }
+}
@@ -0,0 +1,45 @@
+package com.android.livechannel.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.media.tv.TvContentRating;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ContentRatingCodecTest {
+    private static final TvContentRating US_TV_PG =
+            TvContentRating.createRating("com.android.tv", "US_TV", "US_TV_PG");
+    private static final TvContentRating US_TV_14 =
+            TvContentRating.createRating("com.android.tv", "US_TV", "US_TV_14");
+
+    private final ContentRatingCodec mCodec = ContentRatingCodec.getInstance();
+
+    @Test
+    public void decode_skipsTrailingComma() {
+        assertArrayEquals(new TvContentRating[] {US_TV_PG},
+                mCodec.decode(US_TV_PG.flattenToString() + ","));
+    }
+
+    @Test
+    public void decode_skipsEmptyAndBlankSegments() {
+        assertArrayEquals(new TvContentRating[] {US_TV_PG, US_TV_14},
+                mCodec.decode(US_TV_PG.flattenToString() + ",, ," + US_TV_14.flattenToString()));
+    }
+
+    @Test
+    public void decode_onlyDelimiters() {
+        assertEquals(0, mCodec.decode(" , ").length);
+    }
+
+    @Test
+    public void encode_roundTrips() {
+        TvContentRating[] ratings = {US_TV_PG, US_TV_14};
+        assertArrayEquals(ratings, mCodec.decode(mCodec.encode(ratings)));
+    }
+}
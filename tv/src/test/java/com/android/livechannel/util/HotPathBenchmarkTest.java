@@ -0,0 +1,222 @@
+package com.android.livechannel.util;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.media.tv.TvContentRating;
+import android.media.tv.TvContract;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmarks the per-channel work done when a lineup is loaded or synced, at the lineup sizes
+ * seen in the field. Skipped by the regular unit tests; results are printed, run with
+ * {@code ./gradlew :tv:testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HotPathBenchmarkTest {
+    private static final int[] SIZES = {100, 1000, 10000};
+    /** The share of a feed's channels not in the provider yet. */
+    private static final int NEW_CHANNEL_PERCENT = 10;
+    private static final String[][] RATINGS = {
+            {"US_TV", "US_TV_G"},
+            {"US_TV", "US_TV_PG", "US_TV_D", "US_TV_L"},
+            {"US_TV", "US_TV_14", "US_TV_V"},
+            {"US_MV", "US_MV_R"},
+            {"DVB", "DVB_12"},
+            {"DVB", "DVB_16"},
+    };
+
+    @Test
+    public void fromCursor() {
+        for (final int size : SIZES) {
+            final MatrixCursor cursor = newChannelCursor(size);
+            Benchmark.run("fromCursor", size, new Benchmark.Op() {
+                @Override
+                public Object run() {
+                    List<TifChannelEntity> channels = new ArrayList<>(size);
+                    cursor.moveToPosition(-1);
+                    while (cursor.moveToNext()) {
+                        channels.add(TifChannelEntity.fromCursor(cursor));
+                    }
+                    return channels;
+                }
+            });
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void toContentValues() {
+        for (final int size : SIZES) {
+            final List<TifChannelEntity> channels = newChannels(size, 0);
+            Benchmark.run("toContentValues", size, new Benchmark.Op() {
+                @Override
+                public Object run() {
+                    ContentValues values = null;
+                    for (TifChannelEntity channel : channels) {
+                        values = channel.toContentValues();
+                    }
+                    return values;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void stringToContentRatings() {
+        for (final int size : SIZES) {
+            final String[] ratings = newRatings(size);
+            Benchmark.run("stringToContentRatings", size, new Benchmark.Op() {
+                @Override
+                public Object run() {
+                    TvContentRating[] decoded = null;
+                    for (String rating : ratings) {
+                        decoded = TifChannelUtils.stringToContentRatings(rating);
+                    }
+                    return decoded;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void contentRatingsToString() {
+        for (final int size : SIZES) {
+            String[] ratings = newRatings(size);
+            final TvContentRating[][] decoded = new TvContentRating[size][];
+            for (int i = 0; i < size; ++i) {
+                decoded[i] = TifChannelUtils.stringToContentRatings(ratings[i]);
+            }
+            Benchmark.run("contentRatingsToString", size, new Benchmark.Op() {
+                @Override
+                public Object run() {
+                    String encoded = null;
+                    for (TvContentRating[] rating : decoded) {
+                        encoded = TifChannelUtils.contentRatingsToString(rating);
+                    }
+                    return encoded;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void syncDiff() {
+        for (int size : SIZES) {
+            final List<TifChannelEntity> existing = newChannels(size, 0);
+            // The feed lists the channels in another order and brings some new ones.
+            final List<TifChannelEntity> channels = newChannels(size, NEW_CHANNEL_PERCENT);
+            Collections.reverse(channels);
+            Benchmark.run("syncDiff", size, new Benchmark.Op() {
+                @Override
+                public Object run() {
+                    return ChannelSyncDiff.match(existing, channels);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param newPercent The share of channels whose IDs don't match the first {@code size}.
+     */
+    private static List<TifChannelEntity> newChannels(int size, int newPercent) {
+        MatrixCursor cursor = newChannelCursor(size);
+        List<TifChannelEntity> channels = new ArrayList<>(size);
+        int firstNew = size - size * newPercent / 100;
+        while (cursor.moveToNext()) {
+            TifChannelEntity channel = TifChannelEntity.fromCursor(cursor);
+            if (cursor.getPosition() >= firstNew) {
+                channel.setServiceId(channel.getServiceId() + size);
+            }
+            channels.add(channel);
+        }
+        cursor.close();
+        return channels;
+    }
+
+    private static MatrixCursor newChannelCursor(int size) {
+        String[] projection = TifChannelEntity.PROJECTION;
+        MatrixCursor cursor = new MatrixCursor(projection, size);
+        for (int i = 0; i < size; ++i) {
+            Object[] row = new Object[projection.length];
+            for (int column = 0; column < projection.length; ++column) {
+                row[column] = newValue(projection[column], i);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static Object newValue(String column, int i) {
+        switch (column) {
+            case TvContract.Channels._ID:
+                return (long) i + 1;
+            case TvContract.Channels.COLUMN_ORIGINAL_NETWORK_ID:
+                return 1;
+            case TvContract.Channels.COLUMN_TRANSPORT_STREAM_ID:
+                return i / 16;
+            case TvContract.Channels.COLUMN_SERVICE_ID:
+                return i;
+            case TvContract.Channels.COLUMN_BROWSABLE:
+            case TvContract.Channels.COLUMN_SEARCHABLE:
+                return 1;
+            case TvContract.Channels.COLUMN_LOCKED:
+            case TvContract.Channels.COLUMN_TRANSIENT:
+                return 0;
+            case TvContract.Channels.COLUMN_APP_LINK_COLOR:
+                return 0xff000000 | i;
+            case TvContract.Channels.COLUMN_VERSION_NUMBER:
+                return 1;
+            case TvContract.Channels.COLUMN_PACKAGE_NAME:
+                return "com.android.livechannel";
+            case TvContract.Channels.COLUMN_INPUT_ID:
+                return "com.android.livechannel/.TvInputService";
+            case TvContract.Channels.COLUMN_TYPE:
+                return TvContract.Channels.TYPE_DVB_T2;
+            case TvContract.Channels.COLUMN_SERVICE_TYPE:
+                return TvContract.Channels.SERVICE_TYPE_AUDIO_VIDEO;
+            case TvContract.Channels.COLUMN_DISPLAY_NUMBER:
+                return (i / 10 + 1) + "-" + (i % 10 + 1);
+            case TvContract.Channels.COLUMN_DISPLAY_NAME:
+                return "Channel " + i;
+            case TvContract.Channels.COLUMN_VIDEO_FORMAT:
+                return TvContract.Channels.VIDEO_FORMAT_1080P;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return Ratings for {@code size} programs, drawn from a handful of distinct values as in a
+     * real guide.
+     */
+    private static String[] newRatings(int size) {
+        String[] flattened = new String[RATINGS.length];
+        for (int i = 0; i < RATINGS.length; ++i) {
+            String[] rating = RATINGS[i];
+            String[] subRatings = new String[rating.length - 2];
+            System.arraycopy(rating, 2, subRatings, 0, subRatings.length);
+            flattened[i] = TvContentRating.createRating("com.android.tv", rating[0], rating[1],
+                    subRatings).flattenToString();
+        }
+        String[] ratings = new String[size];
+        for (int i = 0; i < size; ++i) {
+            // Every few programs carry two ratings.
+            ratings[i] = i % 4 == 0
+                    ? flattened[i % flattened.length] + ","
+                            + flattened[(i + 1) % flattened.length]
+                    : flattened[i % flattened.length];
+        }
+        return ratings;
+    }
+}
@@ -0,0 +1,97 @@
+package com.android.livechannel.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.media.tv.TvContentRating;
+
+import com.android.livechannel.bean.TifChannelEntity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ParentalControlEngineTest {
+    private static final TvContentRating US_TV_PG =
+            TvContentRating.createRating("com.android.tv", "US_TV", "US_TV_PG");
+    private static final TvContentRating US_TV_MA =
+            TvContentRating.createRating("com.android.tv", "US_TV", "US_TV_MA");
+    private static final long CHANNEL_ID = 1;
+    private static final long OTHER_CHANNEL_ID = 2;
+
+    private final ContentRatingCodec.RatingPolicy mBlockMature =
+            new ContentRatingCodec.RatingPolicy() {
+                @Override
+                public boolean isRatingBlocked(TvContentRating contentRating) {
+                    return contentRating.contains(US_TV_MA);
+                }
+            };
+    private final ContentRatingCodec.RatingPolicy mBlockNothing =
+            new ContentRatingCodec.RatingPolicy() {
+                @Override
+                public boolean isRatingBlocked(TvContentRating contentRating) {
+                    return false;
+                }
+            };
+
+    private ParentalControlEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mEngine = new ParentalControlEngine();
+        mEngine.setRatingPolicy(mBlockMature);
+        mEngine.setParentalControlsEnabled(true);
+        mEngine.setLineup(newLineup());
+    }
+
+    @Test
+    public void blockedRating_blocksUnlockedChannel() {
+        mEngine.setCurrentProgramRating(CHANNEL_ID, US_TV_MA.flattenToString());
+
+        assertTrue(mEngine.isBlocked(mEngine.indexOf(CHANNEL_ID)));
+        assertFalse(mEngine.isBlocked(mEngine.indexOf(OTHER_CHANNEL_ID)));
+    }
+
+    @Test
+    public void allowedRating_doesNotBlock() {
+        mEngine.setCurrentProgramRating(CHANNEL_ID, US_TV_PG.flattenToString());
+
+        assertFalse(mEngine.isBlocked(mEngine.indexOf(CHANNEL_ID)));
+    }
+
+    @Test
+    public void policyChange_unblocksRating() {
+        mEngine.setCurrentProgramRating(CHANNEL_ID, US_TV_MA.flattenToString());
+
+        mEngine.setRatingPolicy(mBlockNothing);
+
+        assertFalse(mEngine.isBlocked(mEngine.indexOf(CHANNEL_ID)));
+    }
+
+    @Test
+    public void ratingsOutliveLineupChange() {
+        mEngine.setCurrentProgramRating(CHANNEL_ID, US_TV_MA.flattenToString());
+
+        mEngine.setLineup(newLineup());
+
+        assertTrue(mEngine.isBlocked(mEngine.indexOf(CHANNEL_ID)));
+    }
+
+    private static List<TifChannelEntity> newLineup() {
+        return Arrays.asList(newChannel(CHANNEL_ID), newChannel(OTHER_CHANNEL_ID));
+    }
+
+    private static TifChannelEntity newChannel(long id) {
+        TifChannelEntity channel = new TifChannelEntity();
+        channel.setId(id);
+        channel.setLocked(0);
+        return channel;
+    }
+}
@@ -0,0 +1,152 @@
+package com.android.livechannel.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.media.tv.TvContract;
+import android.net.Uri;
+
+import com.android.livechannel.bean.TifProgramEntity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TifChannelUtilsTest {
+    private static final long CHANNEL_ID = 1;
+    private static final long OTHER_CHANNEL_ID = 2;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final long WINDOW_START_MS = 10 * HOUR_MS;
+    private static final long WINDOW_END_MS = 12 * HOUR_MS;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(ProgramProvider.class).create(TvContract.AUTHORITY);
+    }
+
+    @Test
+    public void updatePrograms_keepsProgramsOnWindowEdges() {
+        insertProgram(CHANNEL_ID, "before", WINDOW_START_MS - HOUR_MS, WINDOW_START_MS);
+        insertProgram(CHANNEL_ID, "inside", WINDOW_START_MS, WINDOW_END_MS);
+        insertProgram(CHANNEL_ID, "after", WINDOW_END_MS, WINDOW_END_MS + HOUR_MS);
+
+        TifChannelUtils.updatePrograms(RuntimeEnvironment.application, CHANNEL_ID,
+                WINDOW_START_MS, WINDOW_END_MS, Arrays.asList(
+                        newProgram("first", WINDOW_START_MS, WINDOW_START_MS + HOUR_MS),
+                        newProgram("second", WINDOW_START_MS + HOUR_MS, WINDOW_END_MS)));
+
+        assertEquals(Arrays.asList("before", "first", "second", "after"),
+                queryTitles(CHANNEL_ID));
+    }
+
+    @Test
+    public void updatePrograms_replacesOverlappingPrograms() {
+        insertProgram(CHANNEL_ID, "straddling", WINDOW_START_MS - HOUR_MS,
+                WINDOW_START_MS + HOUR_MS);
+        insertProgram(OTHER_CHANNEL_ID, "other", WINDOW_START_MS, WINDOW_END_MS);
+
+        TifChannelUtils.updatePrograms(RuntimeEnvironment.application, CHANNEL_ID,
+                WINDOW_START_MS, WINDOW_END_MS, Arrays.asList(
+                        newProgram("new", WINDOW_START_MS, WINDOW_END_MS)));
+
+        assertEquals(Arrays.asList("new"), queryTitles(CHANNEL_ID));
+        assertEquals(Arrays.asList("other"), queryTitles(OTHER_CHANNEL_ID));
+    }
+
+    private static TifProgramEntity newProgram(String title, long startMs, long endMs) {
+        TifProgramEntity program = new TifProgramEntity();
+        program.setChannelId(CHANNEL_ID);
+        program.setTitle(title);
+        program.setStartTimeUtcMillis(startMs);
+        program.setEndTimeUtcMillis(endMs);
+        return program;
+    }
+
+    private static void insertProgram(long channelId, String title, long startMs, long endMs) {
+        TifProgramEntity program = newProgram(title, startMs, endMs);
+        program.setChannelId(channelId);
+        RuntimeEnvironment.application.getContentResolver().insert(
+                TvContract.Programs.CONTENT_URI, program.toContentValues());
+    }
+
+    private static List<String> queryTitles(long channelId) {
+        List<String> titles = new ArrayList<>();
+        Cursor cursor = RuntimeEnvironment.application.getContentResolver().query(
+                TvContract.Programs.CONTENT_URI,
+                new String[] {TvContract.Programs.COLUMN_TITLE},
+                TvContract.Programs.COLUMN_CHANNEL_ID + " = ?",
+                new String[] {String.valueOf(channelId)},
+                TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS);
+        try {
+            while (cursor.moveToNext()) {
+                titles.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return titles;
+    }
+
+    /**
+     * Stands in for TvProvider's programs table, with selections applied by SQLite.
+     */
+    public static class ProgramProvider extends ContentProvider {
+        private static final String TABLE = "programs";
+
+        private SQLiteDatabase mDatabase;
+
+        @Override
+        public boolean onCreate() {
+            mDatabase = SQLiteDatabase.create(null);
+            mDatabase.execSQL("CREATE TABLE " + TABLE + " ("
+                    + TvContract.Programs._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + TvContract.Programs.COLUMN_CHANNEL_ID + " INTEGER, "
+                    + TvContract.Programs.COLUMN_TITLE + " TEXT, "
+                    + TvContract.Programs.COLUMN_START_TIME_UTC_MILLIS + " INTEGER, "
+                    + TvContract.Programs.COLUMN_END_TIME_UTC_MILLIS + " INTEGER, "
+                    + TvContract.Programs.COLUMN_CONTENT_RATING + " TEXT)");
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            return mDatabase.query(TABLE, projection, selection, selectionArgs, null, null,
+                    sortOrder);
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return TvContract.buildProgramUri(mDatabase.insert(TABLE, null, values));
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return mDatabase.delete(TABLE, selection, selectionArgs);
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection,
+                String[] selectionArgs) {
+            return mDatabase.update(TABLE, values, selection, selectionArgs);
+        }
+    }
+}